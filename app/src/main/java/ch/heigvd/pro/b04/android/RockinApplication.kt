@@ -0,0 +1,34 @@
+package ch.heigvd.pro.b04.android
+
+import android.app.Application
+import android.net.ConnectivityManager
+import android.net.Network
+import ch.heigvd.pro.b04.android.authentication.AuthenticationTokenLiveData
+import ch.heigvd.pro.b04.android.network.Rockin
+import kotlinx.coroutines.*
+
+/**
+ * The [Application] of the app. It initializes the application-level instances, and replays the
+ * pending votes until they are delivered.
+ */
+@ExperimentalCoroutinesApi
+class RockinApplication : Application() {
+
+    private val scope = CoroutineScope(SupervisorJob() + Dispatchers.IO)
+
+    override fun onCreate() {
+        super.onCreate()
+        AuthenticationTokenLiveData.initialize(this)
+        Rockin.initialize(this)
+
+        // The pending votes are retried with a backoff, and right away when a network becomes
+        // available.
+        scope.launch { Rockin.journal.replayContinuously() }
+        getSystemService(ConnectivityManager::class.java)
+                ?.registerDefaultNetworkCallback(object : ConnectivityManager.NetworkCallback() {
+                    override fun onAvailable(network: Network) {
+                        Rockin.journal.wake()
+                    }
+                })
+    }
+}
@@ -2,15 +2,28 @@ package ch.heigvd.pro.b04.android.authentication;
 
 import android.content.Context;
 import android.content.SharedPreferences;
+import android.os.Handler;
+import android.os.Looper;
 
+import androidx.annotation.VisibleForTesting;
 import androidx.lifecycle.LiveData;
 
 import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import ch.heigvd.pro.b04.android.network.SessionSnapshots;
 
 /**
  * An implementation of a {@link LiveData} that will inform the application about the currently set
  * authentication token. In particular, it offers some utilities to discard the current
  * authentication token if appropriate.
+ *
+ * There is a single instance per process, which acts as the token store of the application. The
+ * token is loaded from the disk once, asynchronously, when the application starts : until then,
+ * the {@link LiveData} has no value. Reads are then served from memory, and writes are persisted
+ * on a background thread.
  */
 public class AuthenticationTokenLiveData extends LiveData<Optional<String>> {
 
@@ -18,36 +31,67 @@ public class AuthenticationTokenLiveData extends LiveData<Optional<String>> {
     private static final String TOKEN_PREF_KEY = "AUTH_TOKEN";
     private static final String TOKEN_DEFAULT_VALUE = null;
 
-    private SharedPreferences.OnSharedPreferenceChangeListener listener =
-            (sharedPreferences, key) -> {
-                if (key.equals(TOKEN_PREF_KEY)) {
-                    retrieveValue();
-                }
-            };
+    private static volatile AuthenticationTokenLiveData instance;
+
+    /**
+     * The executor on which the preferences are accessed. Since it runs a single thread, the writes
+     * are persisted in order, and always after the initial load.
+     */
+    private final ExecutorService disk = Executors.newSingleThreadExecutor();
+    private final AtomicInteger writes = new AtomicInteger();
 
+    /**
+     * The preferences, which are only opened and accessed on the {@link #disk} executor.
+     */
     private SharedPreferences preferences;
 
-    public AuthenticationTokenLiveData(Context context) {
-        super(Optional.empty());
-        this.preferences = context.getSharedPreferences(PREFERENCE_FILE, Context.MODE_PRIVATE);
+    private AuthenticationTokenLiveData(Context context) {
+        disk.execute(() -> {
+            // Opening the preferences already reads the file.
+            preferences = context.getSharedPreferences(PREFERENCE_FILE, Context.MODE_PRIVATE);
+            String token = preferences.getString(TOKEN_PREF_KEY, TOKEN_DEFAULT_VALUE);
+            new Handler(Looper.getMainLooper()).post(() -> {
+                // A token that was entered in the meantime is more recent than the stored one. This
+                // is checked on the main thread, where the tokens are entered.
+                if (writes.get() == 0) {
+                    setValue(Optional.ofNullable(token));
+                }
+            });
+        });
     }
 
-    @Override
-    protected void onActive() {
-        super.onActive();
-        retrieveValue();
-        preferences.registerOnSharedPreferenceChangeListener(listener);
+    /**
+     * Creates the token store of the process, and starts loading the token. This must be called
+     * once, when the application starts.
+     *
+     * @param context The application context.
+     */
+    public static synchronized void initialize(Context context) {
+        if (instance == null) {
+            instance = new AuthenticationTokenLiveData(context.getApplicationContext());
+        }
     }
 
-    @Override
-    protected void onInactive() {
-        super.onInactive();
-        preferences.unregisterOnSharedPreferenceChangeListener(listener);
+    /**
+     * Discards the token store of the process, so that the next test can initialize a new one.
+     */
+    @VisibleForTesting
+    static synchronized void reset() {
+        if (instance != null) {
+            instance.disk.shutdown();
+            instance = null;
+        }
     }
 
-    private void retrieveValue() {
-        String token = preferences.getString(TOKEN_PREF_KEY, TOKEN_DEFAULT_VALUE);
-        setValue(Optional.ofNullable(token));
+    /**
+     * Returns the token store of the process.
+     */
+    public static AuthenticationTokenLiveData getInstance() {
+        AuthenticationTokenLiveData store = instance;
+        if (store == null) {
+            throw new IllegalStateException("The token store has not been initialized.");
+        }
+        return store;
     }
 
     /**
@@ -56,17 +100,41 @@ public class AuthenticationTokenLiveData extends LiveData<Optional<String>> {
      * @param token The newly attributed authentication token.
      */
     public void login(String token) {
-        preferences.edit()
-                .putString(TOKEN_PREF_KEY, token)
-                .apply();
+        store(token);
     }
 
     /**
      * Resets the authentication token and discards it.
      */
     public void logout() {
-        preferences.edit()
-                .putString(TOKEN_PREF_KEY, TOKEN_DEFAULT_VALUE)
-                .apply();
+        Optional<String> current = getValue();
+        if (current != null) {
+            if (!current.isPresent()) {
+                // Already logged out : observers reacting to the logout must not trigger it again.
+                return;
+            }
+            SessionResolutionCache.invalidate(current.get());
+        }
+        SessionSnapshots.INSTANCE.clear();
+        store(TOKEN_DEFAULT_VALUE);
+    }
+
+    /**
+     * Sets and persists a token. Nothing is done if the token did not change, so observers that
+     * react to a value by storing it again do not get notified in a loop.
+     */
+    private void store(String token) {
+        if (Optional.ofNullable(token).equals(getValue())) {
+            return;
+        }
+        writes.incrementAndGet();
+        if (Looper.myLooper() == Looper.getMainLooper()) {
+            setValue(Optional.ofNullable(token));
+        } else {
+            postValue(Optional.ofNullable(token));
+        }
+        disk.execute(() -> preferences.edit()
+                .putString(TOKEN_PREF_KEY, token)
+                .commit());
     }
 }
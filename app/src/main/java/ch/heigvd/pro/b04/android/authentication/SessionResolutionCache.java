@@ -0,0 +1,107 @@
+package ch.heigvd.pro.b04.android.authentication;
+
+import android.os.SystemClock;
+import android.util.Pair;
+
+import androidx.lifecycle.LiveData;
+import androidx.lifecycle.MutableLiveData;
+import androidx.lifecycle.Transformations;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import ch.heigvd.pro.b04.android.datamodel.Poll;
+import ch.heigvd.pro.b04.android.network.SessionSnapshot;
+import ch.heigvd.pro.b04.android.network.SessionSnapshots;
+
+/**
+ * A process-wide cache of the {@link Poll} that each token resolves to. Resolving a token takes
+ * two serial round trips (the session, then the poll), so the resolution is shared by all the
+ * observers of a token : a resolution that is still in flight is reused, and so is a resolved poll
+ * for {@link #TTL_MILLIS}.
+ *
+ * If the {@link SessionSnapshot} of the last session was made with the token, its poll is used
+ * right away instead : the poll screen then revalidates the session in the background.
+ */
+public final class SessionResolutionCache {
+
+    /**
+     * How long a resolved poll is reused.
+     */
+    private static final long TTL_MILLIS = 5 * 60 * 1000;
+
+    /**
+     * How long an unresolved request is reused, before it is considered lost and started again.
+     */
+    private static final long IN_FLIGHT_MILLIS = 30 * 1000;
+
+    /**
+     * The number of tokens that are remembered.
+     */
+    private static final int MAX_ENTRIES = 4;
+
+    private static final class Entry {
+        private final long createdAt = SystemClock.elapsedRealtime();
+        private long resolvedAt = -1;
+        private LiveData<Pair<String, Poll>> result;
+
+        private boolean isValid(long now) {
+            if (resolvedAt >= 0) {
+                return now - resolvedAt < TTL_MILLIS;
+            }
+            return now - createdAt < IN_FLIGHT_MILLIS;
+        }
+    }
+
+    private static final Map<String, Entry> entries =
+            new LinkedHashMap<String, Entry>(MAX_ENTRIES, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                    return size() > MAX_ENTRIES;
+                }
+            };
+
+    private SessionResolutionCache() {}
+
+    /**
+     * Returns a {@link LiveData} of the {@link Poll} that a token resolves to, along with the token.
+     *
+     * @param token The token to resolve.
+     */
+    public static synchronized LiveData<Pair<String, Poll>> resolve(String token) {
+        long now = SystemClock.elapsedRealtime();
+        Entry entry = entries.get(token);
+        if (entry != null && entry.isValid(now)) {
+            return entry.result;
+        }
+
+        Entry created = new Entry();
+        LiveData<Pair<String, Poll>> resolution = Transformations.switchMap(
+                SessionSnapshots.INSTANCE.resume(token),
+                snapshot -> {
+                    if (snapshot != null && snapshot.getPoll() != null) {
+                        return new MutableLiveData<>(Pair.create(token, snapshot.getPoll()));
+                    }
+                    return Transformations.switchMap(
+                            new TokenToTokenWithSession().apply(token),
+                            values -> new SessionToTokenWithPoll().apply(values)
+                    );
+                }
+        );
+        created.result = Transformations.map(resolution, pair -> {
+            created.resolvedAt = SystemClock.elapsedRealtime();
+            return pair;
+        });
+        entries.put(token, created);
+        return created.result;
+    }
+
+    /**
+     * Forgets the resolution of a token, for instance once it is known to be invalid.
+     *
+     * @param token The token to forget.
+     */
+    public static synchronized void invalidate(String token) {
+        entries.remove(token);
+    }
+}
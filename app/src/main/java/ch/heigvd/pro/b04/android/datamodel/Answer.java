@@ -1,7 +1,11 @@
 package ch.heigvd.pro.b04.android.datamodel;
 
+import com.google.gson.TypeAdapter;
 import com.google.gson.annotations.SerializedName;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
 
+import java.io.IOException;
 import java.util.Objects;
 
 public class Answer {
@@ -54,8 +58,22 @@ public class Answer {
         return checked;
     }
 
-    public void toggle() {
-        checked = !checked;
+    /**
+     * Returns a copy of this answer, with the opposite checked state. Answers are never modified
+     * in place, since they are shared by the immutable models of the application.
+     *
+     * @return The toggled answer.
+     */
+    public Answer toggled() {
+        Answer toggled = new Answer();
+        toggled.idModerator = idModerator;
+        toggled.idPoll = idPoll;
+        toggled.idQuestion = idQuestion;
+        toggled.idAnswer = idAnswer;
+        toggled.title = title;
+        toggled.description = description;
+        toggled.checked = !checked;
+        return toggled;
     }
 
     @Override
@@ -76,4 +94,58 @@ public class Answer {
     public int hashCode() {
         return Objects.hash(idModerator, idPoll, idQuestion, idAnswer, title, description);
     }
+
+    /**
+     * A streaming {@link TypeAdapter} for answers, which avoids the cost of reflection when parsing
+     * the lists of answers that are polled continuously.
+     */
+    public static final class GsonAdapter extends TypeAdapter<Answer> {
+        @Override
+        public void write(JsonWriter out, Answer answer) throws IOException {
+            out.beginObject();
+            out.name("idModerator").value(answer.idModerator);
+            out.name("idPoll").value(answer.idPoll);
+            out.name("idQuestion").value(answer.idQuestion);
+            out.name("idAnswer").value(answer.idAnswer);
+            out.name("title").value(answer.title);
+            out.name("description").value(answer.description);
+            out.name("checked").value(answer.checked);
+            out.endObject();
+        }
+
+        @Override
+        public Answer read(JsonReader in) throws IOException {
+            Answer answer = new Answer();
+            in.beginObject();
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "idModerator":
+                        answer.idModerator = JsonReaders.nextLong(in, answer.idModerator);
+                        break;
+                    case "idPoll":
+                        answer.idPoll = JsonReaders.nextLong(in, answer.idPoll);
+                        break;
+                    case "idQuestion":
+                        answer.idQuestion = JsonReaders.nextLong(in, answer.idQuestion);
+                        break;
+                    case "idAnswer":
+                        answer.idAnswer = JsonReaders.nextLong(in, answer.idAnswer);
+                        break;
+                    case "title":
+                        answer.title = JsonReaders.nextString(in, answer.title);
+                        break;
+                    case "description":
+                        answer.description = JsonReaders.nextString(in, answer.description);
+                        break;
+                    case "checked":
+                        answer.checked = JsonReaders.nextBoolean(in, answer.checked);
+                        break;
+                    default:
+                        in.skipValue();
+                }
+            }
+            in.endObject();
+            return answer;
+        }
+    }
 }
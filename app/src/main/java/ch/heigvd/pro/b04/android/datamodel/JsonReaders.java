@@ -0,0 +1,54 @@
+package ch.heigvd.pro.b04.android.datamodel;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import java.io.IOException;
+
+/**
+ * Helper methods shared by the streaming type adapters of the data model. JSON nulls are read as
+ * the default value of the field, just like the reflective adapters would leave the field untouched.
+ */
+final class JsonReaders {
+    private JsonReaders() {}
+
+    static String nextString(JsonReader in, String fallback) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return fallback;
+        }
+        return in.nextString();
+    }
+
+    static long nextLong(JsonReader in, long fallback) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return fallback;
+        }
+        return in.nextLong();
+    }
+
+    static int nextInt(JsonReader in, int fallback) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return fallback;
+        }
+        return in.nextInt();
+    }
+
+    static double nextDouble(JsonReader in, double fallback) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return fallback;
+        }
+        return in.nextDouble();
+    }
+
+    static boolean nextBoolean(JsonReader in, boolean fallback) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return fallback;
+        }
+        return in.nextBoolean();
+    }
+}
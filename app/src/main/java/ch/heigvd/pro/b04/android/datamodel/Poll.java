@@ -1,7 +1,11 @@
 package ch.heigvd.pro.b04.android.datamodel;
 
+import com.google.gson.TypeAdapter;
 import com.google.gson.annotations.SerializedName;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
 
+import java.io.IOException;
 import java.io.Serializable;
 
 public class Poll implements Serializable {
@@ -31,4 +35,42 @@ public class Poll implements Serializable {
     public String getTitle() {
         return title;
     }
+
+    /**
+     * A streaming {@link TypeAdapter} for polls, which avoids the cost of reflection when parsing
+     * the poll that is polled continuously.
+     */
+    public static final class GsonAdapter extends TypeAdapter<Poll> {
+        @Override
+        public void write(JsonWriter out, Poll poll) throws IOException {
+            out.beginObject();
+            out.name("idModerator").value(poll.idModerator);
+            out.name("idPoll").value(poll.idPoll);
+            out.name("title").value(poll.title);
+            out.endObject();
+        }
+
+        @Override
+        public Poll read(JsonReader in) throws IOException {
+            Poll poll = new Poll(0, 0);
+            in.beginObject();
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "idModerator":
+                        poll.idModerator = JsonReaders.nextInt(in, poll.idModerator);
+                        break;
+                    case "idPoll":
+                        poll.idPoll = JsonReaders.nextInt(in, poll.idPoll);
+                        break;
+                    case "title":
+                        poll.title = JsonReaders.nextString(in, poll.title);
+                        break;
+                    default:
+                        in.skipValue();
+                }
+            }
+            in.endObject();
+            return poll;
+        }
+    }
 }
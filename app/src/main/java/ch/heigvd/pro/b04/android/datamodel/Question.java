@@ -1,11 +1,25 @@
 package ch.heigvd.pro.b04.android.datamodel;
 
+import com.google.gson.TypeAdapter;
 import com.google.gson.annotations.SerializedName;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
 
+import java.io.IOException;
 import java.io.Serializable;
+import java.util.Comparator;
 import java.util.Objects;
 
 public class Question implements Serializable {
+
+    /**
+     * The order in which questions are displayed : by index in the poll, then by identifier for
+     * questions that share the same index.
+     */
+    public static final Comparator<Question> ORDER = Comparator
+            .comparingDouble(Question::getIndexInPoll)
+            .thenComparingLong(Question::getIdQuestion);
+
     @SerializedName("idModerator")
     private long idModerator;
 
@@ -80,4 +94,62 @@ public class Question implements Serializable {
     public int hashCode() {
         return Objects.hash(idModerator, idPoll, idQuestion, indexInPoll, title, details, answerMin, answerMax);
     }
+
+    /**
+     * A streaming {@link TypeAdapter} for questions, which avoids the cost of reflection when
+     * parsing the lists of questions that are polled continuously.
+     */
+    public static final class GsonAdapter extends TypeAdapter<Question> {
+        @Override
+        public void write(JsonWriter out, Question question) throws IOException {
+            out.beginObject();
+            out.name("idModerator").value(question.idModerator);
+            out.name("idPoll").value(question.idPoll);
+            out.name("idQuestion").value(question.idQuestion);
+            out.name("indexInPoll").value(question.indexInPoll);
+            out.name("title").value(question.title);
+            out.name("details").value(question.details);
+            out.name("answerMin").value(question.answerMin);
+            out.name("answerMax").value(question.answerMax);
+            out.endObject();
+        }
+
+        @Override
+        public Question read(JsonReader in) throws IOException {
+            Question question = new Question();
+            in.beginObject();
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "idModerator":
+                        question.idModerator = JsonReaders.nextLong(in, question.idModerator);
+                        break;
+                    case "idPoll":
+                        question.idPoll = JsonReaders.nextLong(in, question.idPoll);
+                        break;
+                    case "idQuestion":
+                        question.idQuestion = JsonReaders.nextLong(in, question.idQuestion);
+                        break;
+                    case "indexInPoll":
+                        question.indexInPoll = JsonReaders.nextDouble(in, question.indexInPoll);
+                        break;
+                    case "title":
+                        question.title = JsonReaders.nextString(in, question.title);
+                        break;
+                    case "details":
+                        question.details = JsonReaders.nextString(in, question.details);
+                        break;
+                    case "answerMin":
+                        question.answerMin = JsonReaders.nextInt(in, question.answerMin);
+                        break;
+                    case "answerMax":
+                        question.answerMax = JsonReaders.nextInt(in, question.answerMax);
+                        break;
+                    default:
+                        in.skipValue();
+                }
+            }
+            in.endObject();
+            return question;
+        }
+    }
 }
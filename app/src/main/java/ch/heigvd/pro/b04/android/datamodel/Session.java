@@ -1,6 +1,11 @@
 package ch.heigvd.pro.b04.android.datamodel;
 
+import com.google.gson.TypeAdapter;
 import com.google.gson.annotations.SerializedName;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
 
 public class Session {
     @SerializedName("idModerator")
@@ -29,4 +34,49 @@ public class Session {
     public String getCode() {
         return code;
     }
+
+    /**
+     * A streaming {@link TypeAdapter} for sessions.
+     */
+    public static final class GsonAdapter extends TypeAdapter<Session> {
+        @Override
+        public void write(JsonWriter out, Session session) throws IOException {
+            out.beginObject();
+            out.name("idModerator").value(session.idModerator);
+            out.name("idPoll").value(session.idPoll);
+            out.name("idSession").value(session.idSession);
+            out.name("code").value(session.code);
+            out.name("status").value(session.status);
+            out.endObject();
+        }
+
+        @Override
+        public Session read(JsonReader in) throws IOException {
+            Session session = new Session();
+            in.beginObject();
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "idModerator":
+                        session.idModerator = JsonReaders.nextString(in, session.idModerator);
+                        break;
+                    case "idPoll":
+                        session.idPoll = JsonReaders.nextString(in, session.idPoll);
+                        break;
+                    case "idSession":
+                        session.idSession = JsonReaders.nextString(in, session.idSession);
+                        break;
+                    case "code":
+                        session.code = JsonReaders.nextString(in, session.code);
+                        break;
+                    case "status":
+                        session.status = JsonReaders.nextString(in, session.status);
+                        break;
+                    default:
+                        in.skipValue();
+                }
+            }
+            in.endObject();
+            return session;
+        }
+    }
 }
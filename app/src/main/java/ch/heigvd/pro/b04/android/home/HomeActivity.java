@@ -19,6 +19,7 @@ import com.google.zxing.integration.android.IntentIntegrator;
 import com.google.zxing.integration.android.IntentResult;
 
 import ch.heigvd.pro.b04.android.datamodel.Poll;
+import ch.heigvd.pro.b04.android.network.Rockin;
 import ch.heigvd.pro.b04.android.poll.PollActivity;
 import ch.heigvd.pro.b04.android.R;
 
@@ -141,6 +142,8 @@ public class HomeActivity extends AppCompatActivity {
      * @param view The button which called the method
      */
     public void scanQR(View view) {
+        // The scanned code will be sent right away, so the connection can be opened meanwhile.
+        Rockin.prewarm();
         new IntentIntegrator(this)
                 .setDesiredBarcodeFormats(IntentIntegrator.QR_CODE)
                 .setPrompt("Scan the QR Code associated with your Poll")
@@ -7,8 +7,7 @@ import androidx.annotation.NonNull;
 import androidx.lifecycle.AndroidViewModel;
 import androidx.lifecycle.LiveData;
 import androidx.lifecycle.MutableLiveData;
-
-import org.jetbrains.annotations.NotNull;
+import androidx.lifecycle.ViewModelKt;
 
 import java.util.ArrayList;
 import java.util.HashSet;
@@ -19,13 +18,9 @@ import java.util.Objects;
 import java.util.Set;
 
 import ch.heigvd.pro.b04.android.authentication.AuthenticationTokenLiveData;
-import ch.heigvd.pro.b04.android.datamodel.SessionCode;
-import ch.heigvd.pro.b04.android.datamodel.Token;
+import ch.heigvd.pro.b04.android.network.ConnectPipeline;
+import ch.heigvd.pro.b04.android.network.ConnectResult;
 import ch.heigvd.pro.b04.android.network.Rockin;
-import ch.heigvd.pro.b04.android.utils.LocalDebug;
-import retrofit2.Call;
-import retrofit2.Callback;
-import retrofit2.Response;
 
 import static ch.heigvd.pro.b04.android.home.State.ERROR;
 import static ch.heigvd.pro.b04.android.home.State.NORMAL;
@@ -36,31 +31,12 @@ public final class HomeViewModel extends AndroidViewModel {
     private MutableLiveData<Set<Emoji>> selectedEmoji = new MutableLiveData<>(new HashSet<>());
     private MutableLiveData<String> registrationCode = new MutableLiveData<>();
     private MutableLiveData<List<Emoji>> registrationCodeEmoji = new MutableLiveData<>(new ArrayList<>());
-    private AuthenticationTokenLiveData tokenData = new AuthenticationTokenLiveData(getApplication());
+    private AuthenticationTokenLiveData tokenData = AuthenticationTokenLiveData.getInstance();
 
     public HomeViewModel(@NonNull Application application) {
         super(application);
     }
 
-    private Callback<Token> callbackToken = new Callback<Token>() {
-        @Override
-        public void onResponse(@NotNull Call<Token> call, Response<Token> response) {
-            if (response.isSuccessful() && response.body() != null) {
-                    onSuccessfulToken(response.body().getToken());
-            } else {
-                requestState.postValue(ERROR);
-                LocalDebug.logUnsuccessfulRequest(call, response);
-                Log.w("localDebug", "Registration code was : " + registrationCode.getValue());
-            }
-        }
-
-        @Override
-        public void onFailure(@NotNull Call<Token> call, @NotNull Throwable t) {
-            requestState.postValue(ERROR);
-            LocalDebug.logFailedRequest(call, t);
-        }
-    };
-
     /**
      * Helper method to setup the current state when we successfully retrieve a token
      * @param token The retrieved token
@@ -87,6 +63,11 @@ public final class HomeViewModel extends AndroidViewModel {
             emojisBuffer.add(emoji);
         }
 
+        if (emojisBuffer.size() == 1) {
+            // The code is being entered, so the connect request will follow shortly.
+            Rockin.prewarm();
+        }
+
         if (emojisBuffer.size() == 4) {
             String code = buildCodeFromEmojis();
             sendConnectRequest(code);
@@ -118,12 +99,20 @@ public final class HomeViewModel extends AndroidViewModel {
     }
 
     /**
-     * Helper method used to send a connection request to the server
+     * Helper method used to send a connection request to the server. The poll of the session is
+     * fetched along, so it can be displayed as soon as the token is stored.
      */
     void sendConnectRequest(String code) {
         requestState.postValue(SENDING);
         registrationCode.postValue(code);
-        Rockin.api().postConnect(new SessionCode(code)).enqueue(callbackToken);
+        ConnectPipeline.connect(ViewModelKt.getViewModelScope(this), code, result -> {
+            if (result instanceof ConnectResult.Connected) {
+                onSuccessfulToken(((ConnectResult.Connected) result).getToken());
+            } else {
+                requestState.postValue(ERROR);
+                Log.w("localDebug", "Registration code was : " + code);
+            }
+        });
     }
 
     /**
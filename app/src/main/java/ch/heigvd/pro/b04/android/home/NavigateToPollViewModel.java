@@ -10,8 +10,7 @@ import androidx.lifecycle.MutableLiveData;
 import androidx.lifecycle.Transformations;
 
 import ch.heigvd.pro.b04.android.authentication.AuthenticationTokenLiveData;
-import ch.heigvd.pro.b04.android.authentication.SessionToTokenWithPoll;
-import ch.heigvd.pro.b04.android.authentication.TokenToTokenWithSession;
+import ch.heigvd.pro.b04.android.authentication.SessionResolutionCache;
 import ch.heigvd.pro.b04.android.datamodel.Poll;
 
 /**
@@ -26,12 +25,8 @@ public class NavigateToPollViewModel extends AndroidViewModel {
         super(application);
 
         displayedPoll = Transformations.switchMap(
-                new AuthenticationTokenLiveData(application),
-                maybeToken -> maybeToken.map(
-                        token -> Transformations.switchMap(
-                                new TokenToTokenWithSession().apply(token),
-                                values -> new SessionToTokenWithPoll().apply(values)
-                        ))
+                AuthenticationTokenLiveData.getInstance(),
+                maybeToken -> maybeToken.map(SessionResolutionCache::resolve)
                         .orElseGet(MutableLiveData::new)
         );
     }
@@ -0,0 +1,40 @@
+package ch.heigvd.pro.b04.android.network
+
+import okhttp3.CacheControl
+import okhttp3.Interceptor
+import okhttp3.Response
+import java.util.concurrent.TimeUnit
+
+/**
+ * The name of the header that asks for a cached response, with its maximum staleness in seconds.
+ * It is removed by the [CachePolicyInterceptor] before the request reaches the cache.
+ */
+const val MAX_STALE_HEADER_NAME = "X-Rockin-Max-Stale"
+
+/**
+ * An OkHttp [Interceptor] that turns the requests carrying a [MAX_STALE_HEADER_NAME] header into
+ * cache-only requests, which accept a response up to that many seconds stale. Such requests never
+ * touch the network : when nothing suitable is cached, the cache answers with a 504 Unsatisfiable
+ * Request, which is not successful for Retrofit.
+ *
+ * Cache-only requests are not conditional, since the cache ignores the requests that carry their
+ * own validators. This interceptor must thus run before the [ConditionalRequestInterceptor].
+ */
+class CachePolicyInterceptor : Interceptor {
+
+    override fun intercept(chain: Interceptor.Chain): Response {
+        val original = chain.request()
+        val maxStale = original.header(MAX_STALE_HEADER_NAME)?.toIntOrNull()
+                ?: return chain.proceed(original)
+
+        val request = original.newBuilder()
+                .removeHeader(MAX_STALE_HEADER_NAME)
+                .removeHeader(CONDITIONAL_HEADER_NAME)
+                .cacheControl(CacheControl.Builder()
+                        .onlyIfCached()
+                        .maxStale(maxStale, TimeUnit.SECONDS)
+                        .build())
+                .build()
+        return chain.proceed(request)
+    }
+}
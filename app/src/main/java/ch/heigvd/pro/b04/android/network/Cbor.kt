@@ -0,0 +1,435 @@
+package ch.heigvd.pro.b04.android.network
+
+import com.google.gson.Gson
+import com.google.gson.JsonIOException
+import com.google.gson.TypeAdapter
+import com.google.gson.reflect.TypeToken
+import com.google.gson.stream.JsonReader
+import com.google.gson.stream.JsonToken
+import okhttp3.MediaType
+import okhttp3.ResponseBody
+import okio.Buffer
+import okio.BufferedSource
+import okio.ByteString
+import retrofit2.Converter
+import retrofit2.Retrofit
+import java.io.IOException
+import java.io.Reader
+import java.lang.reflect.Type
+import java.math.BigDecimal
+import java.math.BigInteger
+
+/**
+ * The media type of the compact binary encoding.
+ */
+private val CBOR = MediaType.get("application/cbor")
+
+/**
+ * The header that should be added on a [RockinAPI] method to let the server answer with the
+ * compact binary encoding. Servers that do not support it keep answering with JSON.
+ */
+const val ACCEPT_COMPACT = "Accept: application/cbor, application/json;q=0.9"
+
+/**
+ * A Retrofit [Converter.Factory] that decodes the responses encoded in CBOR (RFC 7049). The CBOR
+ * items are streamed to the shared [Gson] adapters through a [CborJsonReader], so both encodings
+ * produce the very same objects. Responses in any other encoding are handed to the next converter.
+ *
+ * This factory must be added before the Gson one.
+ *
+ * @param gson The [Gson] instance whose adapters bind the decoded items.
+ */
+class CborConverterFactory(private val gson: Gson) : Converter.Factory() {
+
+    override fun responseBodyConverter(
+            type: Type,
+            annotations: Array<Annotation>,
+            retrofit: Retrofit
+    ): Converter<ResponseBody, *>? {
+        val adapter = gson.getAdapter(TypeToken.get(type))
+        val fallback = retrofit.nextResponseBodyConverter<Any>(this, type, annotations)
+        return Converter<ResponseBody, Any> { body ->
+            val contentType = body.contentType()
+            if (contentType != null
+                    && contentType.type() == CBOR.type()
+                    && contentType.subtype() == CBOR.subtype()) {
+                body.use {
+                    val result = adapter.read(CborJsonReader(it.source()))
+                    if (!it.source().exhausted()) {
+                        throw JsonIOException("CBOR document was not fully consumed.")
+                    }
+                    result
+                }
+            } else {
+                fallback.convert(body)
+            }
+        }
+    }
+}
+
+/**
+ * A [Reader] that is never read, since a [CborJsonReader] overrides all the reading methods.
+ */
+private val UNREADABLE = object : Reader() {
+    override fun read(buffer: CharArray, offset: Int, count: Int): Int = throw AssertionError()
+    override fun close() = throw AssertionError()
+}
+
+/**
+ * A minimal CBOR decoder, which exposes a single data item as the tokens of a [JsonReader], so the
+ * streaming [TypeAdapter]s read it without building an intermediate tree. Tags are ignored, byte
+ * strings are read as base64 strings, and integral map keys as strings.
+ *
+ * The [Map] adapter of [Gson] reaches into the internals of [JsonReader], so the decoded items
+ * must not be bound to maps. The responses of the [RockinAPI] contain none.
+ */
+internal class CborJsonReader(private val source: BufferedSource) : JsonReader(UNREADABLE) {
+
+    /**
+     * An array or a map being read, with its number of remaining items, or pairs for a map.
+     */
+    private class Container(val map: Boolean, var remaining: Long) {
+        var expectsName = map
+        var index = 0
+        var name: String? = null
+    }
+
+    private val containers = ArrayList<Container>()
+    private var peeked: JsonToken? = null
+    private var done = false
+
+    /**
+     * The value of the peeked scalar, or the length of the peeked container.
+     */
+    private var value: Any? = null
+    private var length = 0L
+
+    override fun peek(): JsonToken {
+        peeked?.let { return it }
+        val container = containers.lastOrNull()
+        val token = when {
+            container == null && done -> JsonToken.END_DOCUMENT
+            container != null && container.remaining == 0L -> end(container)
+            else -> item(container)
+        }
+        peeked = token
+        return token
+    }
+
+    override fun hasNext(): Boolean = when (peek()) {
+        JsonToken.END_ARRAY, JsonToken.END_OBJECT, JsonToken.END_DOCUMENT -> false
+        else -> true
+    }
+
+    override fun beginArray() {
+        expect(JsonToken.BEGIN_ARRAY)
+        peeked = null
+        containers += Container(false, length)
+    }
+
+    override fun endArray() {
+        expect(JsonToken.END_ARRAY)
+        containers.removeAt(containers.lastIndex)
+        consumed()
+    }
+
+    override fun beginObject() {
+        expect(JsonToken.BEGIN_OBJECT)
+        peeked = null
+        containers += Container(true, length)
+    }
+
+    override fun endObject() {
+        expect(JsonToken.END_OBJECT)
+        containers.removeAt(containers.lastIndex)
+        consumed()
+    }
+
+    override fun nextName(): String {
+        expect(JsonToken.NAME)
+        val container = containers.last()
+        container.expectsName = false
+        container.name = value as String
+        peeked = null
+        return container.name!!
+    }
+
+    override fun nextString(): String {
+        val token = peek()
+        if (token != JsonToken.STRING && token != JsonToken.NUMBER) {
+            throw IllegalStateException("Expected a string but was $token at path $path")
+        }
+        val string = value.toString()
+        consumed()
+        return string
+    }
+
+    override fun nextBoolean(): Boolean {
+        expect(JsonToken.BOOLEAN)
+        val boolean = value as Boolean
+        consumed()
+        return boolean
+    }
+
+    override fun nextNull() {
+        expect(JsonToken.NULL)
+        consumed()
+    }
+
+    override fun nextDouble(): Double {
+        val double = when (peek()) {
+            JsonToken.NUMBER -> (value as Number).toDouble()
+            JsonToken.STRING -> (value as String).toDouble()
+            else -> throw IllegalStateException("Expected a double but was $peeked at path $path")
+        }
+        if (!isLenient && (double.isNaN() || double.isInfinite())) {
+            throw NumberFormatException("JSON forbids NaN and infinities: $double at path $path")
+        }
+        consumed()
+        return double
+    }
+
+    override fun nextLong(): Long {
+        val long = integral()
+        consumed()
+        return long
+    }
+
+    override fun nextInt(): Int {
+        val long = integral()
+        if (long.toInt().toLong() != long) {
+            throw NumberFormatException("Expected an int but was $long at path $path")
+        }
+        consumed()
+        return long.toInt()
+    }
+
+    override fun skipValue() {
+        when (peek()) {
+            JsonToken.BEGIN_ARRAY -> {
+                beginArray()
+                while (hasNext()) skipValue()
+                endArray()
+            }
+            JsonToken.BEGIN_OBJECT -> {
+                beginObject()
+                while (hasNext()) {
+                    nextName()
+                    skipValue()
+                }
+                endObject()
+            }
+            JsonToken.NAME -> nextName()
+            JsonToken.END_ARRAY, JsonToken.END_OBJECT, JsonToken.END_DOCUMENT ->
+                throw IllegalStateException("Expected a value but was $peeked at path $path")
+            else -> consumed()
+        }
+    }
+
+    override fun close() {
+        containers.clear()
+        peeked = null
+        done = true
+        source.close()
+    }
+
+    override fun getPath(): String = containers.joinToString("", "$") {
+        if (it.map) ".${it.name ?: ""}" else "[${it.index}]"
+    }
+
+    override fun toString(): String = "CborJsonReader at path $path"
+
+    private fun expect(token: JsonToken) {
+        val actual = peek()
+        if (actual != token) {
+            throw IllegalStateException("Expected $token but was $actual at path $path")
+        }
+    }
+
+    /**
+     * Marks the peeked value as read, in the container that holds it.
+     */
+    private fun consumed() {
+        peeked = null
+        val container = containers.lastOrNull()
+        if (container == null) {
+            done = true
+            return
+        }
+        if (container.map) container.expectsName = true else container.index += 1
+        if (container.remaining > 0) container.remaining -= 1
+    }
+
+    private fun end(container: Container) = if (container.map) JsonToken.END_OBJECT else JsonToken.END_ARRAY
+
+    /**
+     * Reads the head of the next item in the [container], and its value if it is a scalar.
+     */
+    private fun item(container: Container?): JsonToken {
+        var initial = source.readByte().toInt() and 0xFF
+        if (initial == BREAK) {
+            if (container == null || container.remaining != INDEFINITE_LENGTH) {
+                throw IOException("Unexpected CBOR break")
+            }
+            container.remaining = 0
+            return end(container)
+        }
+        while (initial shr 5 == MAJOR_TAG) {
+            argument(initial and 0x1F)
+            initial = source.readByte().toInt() and 0xFF
+        }
+        val major = initial shr 5
+        val info = initial and 0x1F
+        if (container != null && container.expectsName) {
+            value = key(major, info)
+            return JsonToken.NAME
+        }
+        return when (major) {
+            MAJOR_UNSIGNED -> number(unsigned(argument(info)))
+            MAJOR_NEGATIVE -> number(negative(argument(info)))
+            MAJOR_BYTES -> string(bytes(info).base64())
+            MAJOR_TEXT -> string(bytes(info).utf8())
+            MAJOR_ARRAY -> {
+                length = containerLength(info)
+                JsonToken.BEGIN_ARRAY
+            }
+            MAJOR_MAP -> {
+                length = containerLength(info)
+                JsonToken.BEGIN_OBJECT
+            }
+            else -> simple(info)
+        }
+    }
+
+    private fun number(number: Number): JsonToken {
+        value = number
+        return JsonToken.NUMBER
+    }
+
+    private fun string(string: String): JsonToken {
+        value = string
+        return JsonToken.STRING
+    }
+
+    private fun simple(info: Int): JsonToken = when (info) {
+        SIMPLE_FALSE, SIMPLE_TRUE -> {
+            value = info == SIMPLE_TRUE
+            JsonToken.BOOLEAN
+        }
+        SIMPLE_NULL, SIMPLE_UNDEFINED -> {
+            value = null
+            JsonToken.NULL
+        }
+        FLOAT_HALF -> number(half(source.readShort().toInt() and 0xFFFF))
+        FLOAT_SINGLE -> number(Float.fromBits(source.readInt()))
+        FLOAT_DOUBLE -> number(Double.fromBits(source.readLong()))
+        else -> throw IOException("Unsupported CBOR simple value $info")
+    }
+
+    private fun key(major: Int, info: Int): String = when (major) {
+        MAJOR_TEXT -> bytes(info).utf8()
+        MAJOR_BYTES -> bytes(info).base64()
+        MAJOR_UNSIGNED -> unsigned(argument(info)).toString()
+        MAJOR_NEGATIVE -> negative(argument(info)).toString()
+        else -> throw IOException("Unsupported CBOR map key of major type $major")
+    }
+
+    /**
+     * Returns the peeked number, or numeric string, if it is an exact [Long].
+     */
+    private fun integral(): Long {
+        val token = peek()
+        if (token != JsonToken.NUMBER && token != JsonToken.STRING) {
+            throw IllegalStateException("Expected a long but was $token at path $path")
+        }
+        val value = value
+        if (value is Long) return value
+        try {
+            return BigDecimal(value.toString()).longValueExact()
+        } catch (e: ArithmeticException) {
+            throw NumberFormatException("Expected a long but was $value at path $path")
+        }
+    }
+
+    /**
+     * Reads the argument of an item : its value, or its length.
+     */
+    private fun argument(info: Int): Long = when {
+        info < 24 -> info.toLong()
+        info == 24 -> (source.readByte().toInt() and 0xFF).toLong()
+        info == 25 -> (source.readShort().toInt() and 0xFFFF).toLong()
+        info == 26 -> source.readInt().toLong() and 0xFFFFFFFFL
+        info == 27 -> source.readLong()
+        else -> throw IOException("Invalid CBOR argument $info")
+    }
+
+    private fun length(info: Int): Int {
+        val length = argument(info)
+        if (length < 0 || length > Int.MAX_VALUE) throw IOException("CBOR item too large")
+        return length.toInt()
+    }
+
+    private fun containerLength(info: Int): Long {
+        if (info == INDEFINITE) return INDEFINITE_LENGTH
+        val length = argument(info)
+        if (length < 0) throw IOException("CBOR item too large")
+        return length
+    }
+
+    private fun bytes(info: Int): ByteString {
+        if (info != INDEFINITE) {
+            return source.readByteString(length(info).toLong())
+        }
+        // Indefinite strings are made of definite chunks, until a break.
+        val buffer = Buffer()
+        while (true) {
+            val chunk = source.readByte().toInt() and 0xFF
+            if (chunk == BREAK) break
+            buffer.write(source.readByteString(length(chunk and 0x1F).toLong()))
+        }
+        return buffer.readByteString()
+    }
+
+    private fun unsigned(value: Long): Number =
+            if (value >= 0) value else BigInteger.valueOf(value).add(BigInteger.ONE.shiftLeft(64))
+
+    /**
+     * Returns -1 - n, where n is an unsigned 64 bits integer.
+     */
+    private fun negative(value: Long): Number =
+            if (value >= 0) -1 - value else BigInteger.ONE.negate().subtract(unsigned(value) as BigInteger)
+
+    private fun half(bits: Int): Float {
+        val sign = if (bits and 0x8000 != 0) -1f else 1f
+        val exponent = (bits shr 10) and 0x1F
+        val mantissa = bits and 0x3FF
+        return sign * when (exponent) {
+            0 -> mantissa * HALF_SUBNORMAL
+            0x1F -> if (mantissa == 0) Float.POSITIVE_INFINITY else Float.NaN
+            else -> Math.scalb(1f + mantissa / 1024f, exponent - 15)
+        }
+    }
+
+    companion object {
+        private const val MAJOR_UNSIGNED = 0
+        private const val MAJOR_NEGATIVE = 1
+        private const val MAJOR_BYTES = 2
+        private const val MAJOR_TEXT = 3
+        private const val MAJOR_ARRAY = 4
+        private const val MAJOR_MAP = 5
+        private const val MAJOR_TAG = 6
+
+        private const val SIMPLE_FALSE = 20
+        private const val SIMPLE_TRUE = 21
+        private const val SIMPLE_NULL = 22
+        private const val SIMPLE_UNDEFINED = 23
+        private const val FLOAT_HALF = 25
+        private const val FLOAT_SINGLE = 26
+        private const val FLOAT_DOUBLE = 27
+        private const val INDEFINITE = 31
+        private const val BREAK = 0xFF
+        private const val INDEFINITE_LENGTH = -1L
+
+        private const val HALF_SUBNORMAL = 5.9604645E-8f
+    }
+}
@@ -0,0 +1,95 @@
+package ch.heigvd.pro.b04.android.network
+
+import okhttp3.HttpUrl
+import okhttp3.Interceptor
+import okhttp3.Response
+import java.net.HttpURLConnection.HTTP_NOT_MODIFIED
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.atomic.AtomicLong
+
+/**
+ * The name of the header that marks a request as eligible to conditional polling. It is removed
+ * by the [ConditionalRequestInterceptor] before the request is sent.
+ */
+internal const val CONDITIONAL_HEADER_NAME = "X-Rockin-Conditional"
+
+/**
+ * The header that should be added on a [RockinAPI] method to use conditional polling.
+ */
+const val CONDITIONAL = "$CONDITIONAL_HEADER_NAME: true"
+
+/**
+ * An OkHttp [Interceptor] that turns the repeated GET requests of the polling loops into
+ * conditional requests. The validators (ETag and Last-Modified) of the last successful response are
+ * remembered for each URL, and sent back as If-None-Match and If-Modified-Since.
+ *
+ * When the server answers with a 304 Not Modified, the response is not successful for Retrofit,
+ * so its body is never parsed and [keepBody] simply drops it. Only the requests marked with the
+ * [CONDITIONAL] header are affected, since one-shot requests always need a body.
+ */
+class ConditionalRequestInterceptor : Interceptor {
+
+    private class Validators(val eTag: String?, val lastModified: String?, val length: Long)
+
+    private val validators = ConcurrentHashMap<HttpUrl, Validators>()
+
+    /**
+     * The number of responses that were not downloaded nor parsed thanks to their validators.
+     */
+    val notModifiedCount = AtomicLong()
+
+    /**
+     * The number of body bytes that did not have to be downloaded thanks to their validators.
+     */
+    val savedBytes = AtomicLong()
+
+    override fun intercept(chain: Interceptor.Chain): Response {
+        val original = chain.request()
+        if (original.header(CONDITIONAL_HEADER_NAME) == null) {
+            return chain.proceed(original)
+        }
+
+        val url = original.url()
+        val known = validators[url]
+        val request = original.newBuilder()
+                .removeHeader(CONDITIONAL_HEADER_NAME)
+                .apply {
+                    known?.eTag?.let { header("If-None-Match", it) }
+                    known?.lastModified?.let { header("If-Modified-Since", it) }
+                }
+                .build()
+
+        val response = chain.proceed(request)
+        when {
+            response.code() == HTTP_NOT_MODIFIED && known != null -> {
+                notModifiedCount.incrementAndGet()
+                if (known.length > 0) savedBytes.addAndGet(known.length)
+            }
+            response.isSuccessful -> {
+                val eTag = response.header("ETag")
+                val lastModified = response.header("Last-Modified")
+                if (eTag != null || lastModified != null) {
+                    val length = response.body()?.contentLength() ?: -1
+                    validators[url] = Validators(eTag, lastModified, length)
+                } else {
+                    validators.remove(url)
+                }
+            }
+            else -> validators.remove(url)
+        }
+        return response
+    }
+
+    /**
+     * Forgets the validators of all the URLs whose path starts with the provided path, so that the
+     * next requests to these URLs will return a full body.
+     *
+     * @param path The path of the resources to forget.
+     */
+    fun forget(path: String) {
+        validators.keys.removeAll {
+            val encoded = it.encodedPath()
+            encoded == path || encoded.startsWith("$path/")
+        }
+    }
+}
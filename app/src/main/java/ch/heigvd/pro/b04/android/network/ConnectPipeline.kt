@@ -0,0 +1,100 @@
+package ch.heigvd.pro.b04.android.network
+
+import ch.heigvd.pro.b04.android.datamodel.Question
+import ch.heigvd.pro.b04.android.datamodel.SessionCode
+import ch.heigvd.pro.b04.android.utils.LocalDebug
+import kotlinx.coroutines.*
+import java.util.function.Consumer
+
+/**
+ * The outcome of a [ConnectPipeline].
+ */
+sealed class ConnectResult {
+
+    /**
+     * The code was accepted, and a token was attributed to the participant.
+     */
+    class Connected(val token: String) : ConnectResult()
+
+    /**
+     * The code was rejected by the server, or the request could not be made.
+     */
+    object Failed : ConnectResult()
+}
+
+/**
+ * Connects a participant to a session with its code. Once the token is retrieved, the session,
+ * then the poll and the questions are fetched right away, in memory, rather than once the token
+ * has been stored and observed. They are handed to the poll screen through the [SessionSnapshot]
+ * of the session, which it renders before its own requests complete.
+ *
+ * Fetching the session data is best effort : if it fails, the poll is resolved from the token, as
+ * for a returning participant.
+ */
+object ConnectPipeline {
+
+    /**
+     * Starts connecting with a code, and informs the callback of the [ConnectResult] on the main
+     * thread. The pipeline is cancelled along with the [CoroutineScope].
+     */
+    @JvmStatic
+    fun connect(scope: CoroutineScope, code: String, callback: Consumer<ConnectResult>): Job =
+            scope.launch(Dispatchers.Main) { callback.accept(connect(code)) }
+
+    /**
+     * Connects with a code, and fetches the data of the session before returning.
+     *
+     * @param api The [RockinAPI] through which the requests are made.
+     */
+    suspend fun connect(code: String, api: RockinAPI = Rockin.api): ConnectResult {
+        val response = try {
+            api.postConnectSuspending(SessionCode(code))
+        } catch (error: CancellationException) {
+            throw error
+        } catch (error: Exception) {
+            // Network failures, as well as malformed bodies.
+            LocalDebug.logFailedRequest("/connect", error)
+            return ConnectResult.Failed
+        }
+        if (!response.isSuccessful) {
+            LocalDebug.logUnsuccessfulResponse(response)
+            return ConnectResult.Failed
+        }
+        val token = response.body()?.token
+        if (token == null) {
+            LocalDebug.logFailedRequest("/connect", IllegalStateException("No token received"))
+            return ConnectResult.Failed
+        }
+
+        try {
+            prefetch(token, api)
+        } catch (error: CancellationException) {
+            throw error
+        } catch (error: Exception) {
+            LocalDebug.logFailedRequest("/session", error)
+        }
+        return ConnectResult.Connected(token)
+    }
+
+    /**
+     * Fetches the session of a token, then its poll and its questions concurrently, and stores
+     * them in the [SessionSnapshot] of the session.
+     */
+    private suspend fun prefetch(token: String, api: RockinAPI) = coroutineScope {
+        val session = api.getSessionSuspending(token).body() ?: return@coroutineScope
+        val idModerator = session.idModerator?.toLongOrNull() ?: return@coroutineScope
+        val idPoll = session.idPoll?.toLongOrNull() ?: return@coroutineScope
+
+        val poll = async { api.getPollSuspending(idModerator, idPoll, token, null).body() }
+        val questions = async {
+            api.getQuestionsSuspending(idModerator, idPoll, token, null).body()
+                    ?.sortedWith(Question.ORDER)
+        }
+
+        val fetchedPoll = poll.await() ?: return@coroutineScope
+        val fetchedQuestions = questions.await() ?: emptyList()
+        SessionSnapshots.update(token, idModerator, idPoll) {
+            it.copy(poll = fetchedPoll, questions = fetchedQuestions)
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package ch.heigvd.pro.b04.android.network
+
+import okhttp3.*
+import java.io.IOException
+
+/**
+ * How long after a connection was warmed or used another warming is skipped, in milliseconds.
+ */
+private const val WARM_INTERVAL : Long = 30_000
+
+/**
+ * Opens a connection to the backend ahead of time, while the participant is still entering a
+ * code, so the DNS lookup and the TCP and TLS handshakes are done before the first real request.
+ * The connection then sits in the shared pool, where the next request picks it up, and is closed
+ * by the pool once it has been idle for its keep-alive duration, like any other connection.
+ *
+ * This is also an application [Interceptor] of the client, which records when the connections are
+ * used by actual requests : no connection is warmed while a recently used one may still be pooled.
+ *
+ * @param url The URL that is requested to open the connection.
+ * @param interval How long after a connection was warmed or used another warming is skipped, in
+ *                 milliseconds.
+ * @param clock The monotonic clock measuring the elapsed time, in milliseconds.
+ */
+internal class ConnectionWarmer(
+        private val url: HttpUrl,
+        private val interval: Long = WARM_INTERVAL,
+        private val clock: () -> Long
+) : Interceptor {
+
+    @Volatile
+    private var lastUsedAt = 0L
+    private var warmedAt = 0L
+
+    override fun intercept(chain: Interceptor.Chain): Response {
+        val request = chain.request()
+        if (request.tag(ConnectionWarmer::class.java) == null) {
+            lastUsedAt = clock()
+        }
+        return chain.proceed(request)
+    }
+
+    private fun isRecent(time: Long, now: Long) = time != 0L && now - time < interval
+
+    /**
+     * Opens a connection with the provided client, unless one was warmed or used recently.
+     */
+    @Synchronized
+    fun warm(client: OkHttpClient) {
+        val now = clock()
+        if (isRecent(warmedAt, now) || isRecent(lastUsedAt, now)) return
+        warmedAt = now
+
+        // A HEAD request is enough to establish the connection, and has no body to download.
+        val request = Request.Builder()
+                .url(url)
+                .head()
+                .cacheControl(CacheControl.FORCE_NETWORK)
+                .tag(ConnectionWarmer::class.java, this)
+                .build()
+        client.newCall(request).enqueue(object : Callback {
+            override fun onFailure(call: Call, e: IOException) {
+                // The first request will simply open its own connection.
+            }
+
+            override fun onResponse(call: Call, response: Response) {
+                response.close()
+            }
+        })
+    }
+}
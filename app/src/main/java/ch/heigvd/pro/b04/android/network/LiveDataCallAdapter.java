@@ -24,22 +24,30 @@ public class LiveDataCallAdapter<T> implements CallAdapter<T, LiveData<ApiRespon
     public LiveData<ApiResponse<T>> adapt(@NotNull Call<T> call) {
         return new LiveData<ApiResponse<T>>(ApiResponse.pending()) {
 
-            private boolean success;
+            private volatile boolean success;
+            private volatile boolean inFlight;
+            private Call<T> current = call;
 
             @Override
             protected void onActive() {
                 super.onActive();
-                if (!success) enqueue();
+                // A call that is still in flight will post its result, so it is not sent again.
+                if (!success && !inFlight) enqueue();
             }
 
             @Override
             protected void onInactive() {
                 super.onInactive();
-                if (!call.isExecuted()) call.cancel();
+                if (!current.isExecuted()) current.cancel();
             }
 
             private void enqueue() {
-                call.enqueue(new Callback<T>() {
+                // A call can only be executed once, so a failed call is retried with a copy.
+                if (current.isExecuted() || current.isCanceled()) {
+                    current = current.clone();
+                }
+                inFlight = true;
+                current.enqueue(new Callback<T>() {
                     @Override
                     public void onResponse(@NotNull Call<T> call, @NotNull Response<T> response) {
                         if (response.isSuccessful()) {
@@ -48,12 +56,14 @@ public class LiveDataCallAdapter<T> implements CallAdapter<T, LiveData<ApiRespon
                             postValue(ApiResponse.ofError(response.code()));
                         }
                         success = true;
+                        inFlight = false;
                     }
 
                     @Override
                     public void onFailure(@NotNull Call<T> call, @NotNull Throwable t) {
                         postValue(ApiResponse.ofError(500));
                         success = false;
+                        inFlight = false;
                     }
                 });
             }
@@ -0,0 +1,82 @@
+package ch.heigvd.pro.b04.android.network
+
+import com.google.gson.JsonParseException
+import com.google.gson.annotations.SerializedName
+import kotlinx.coroutines.ExperimentalCoroutinesApi
+import kotlinx.coroutines.channels.awaitClose
+import kotlinx.coroutines.flow.Flow
+import kotlinx.coroutines.flow.callbackFlow
+import okhttp3.*
+
+/**
+ * A sealed class representing the notifications that are pushed by the server on the live update
+ * channel of a poll.
+ */
+sealed class LiveUpdate {
+
+    /**
+     * The channel is open, and changes will be pushed from now on.
+     */
+    object Connected : LiveUpdate()
+
+    object PollChanged : LiveUpdate()
+    object QuestionsChanged : LiveUpdate()
+    class AnswersChanged(val idQuestion: Long) : LiveUpdate()
+}
+
+/**
+ * The raw message that is sent by the server. For instance, `{"type":"answers","idQuestion":4}`.
+ */
+private class LiveMessage(
+        @SerializedName("type") val type: String?,
+        @SerializedName("idQuestion") val idQuestion: Long?
+)
+
+private fun parse(text: String): LiveUpdate? {
+    val message = try {
+        Rockin.gson.fromJson(text, LiveMessage::class.java)
+    } catch (error: JsonParseException) {
+        null
+    }
+    return when (message?.type) {
+        "poll" -> LiveUpdate.PollChanged
+        "questions" -> LiveUpdate.QuestionsChanged
+        "answers" -> message.idQuestion?.let { LiveUpdate.AnswersChanged(it) }
+        else -> null
+    }
+}
+
+/**
+ * Opens a WebSocket to the provided [url], and returns a [Flow] of the [LiveUpdate] that are
+ * pushed by the server. The [Flow] fails as soon as the connection drops, and closing the [Flow]
+ * closes the WebSocket.
+ *
+ * @param client The [OkHttpClient] used to open the WebSocket.
+ * @param url The URL of the live update channel.
+ */
+@ExperimentalCoroutinesApi
+fun openLiveUpdates(client: OkHttpClient, url: HttpUrl): Flow<LiveUpdate> = callbackFlow {
+    val request = Request.Builder().url(url).build()
+    val socket = client.newWebSocket(request, object : WebSocketListener() {
+        override fun onOpen(webSocket: WebSocket, response: Response) {
+            offer(LiveUpdate.Connected)
+        }
+
+        override fun onMessage(webSocket: WebSocket, text: String) {
+            parse(text)?.let { offer(it) }
+        }
+
+        override fun onClosing(webSocket: WebSocket, code: Int, reason: String) {
+            webSocket.close(code, null)
+        }
+
+        override fun onClosed(webSocket: WebSocket, code: Int, reason: String) {
+            close()
+        }
+
+        override fun onFailure(webSocket: WebSocket, t: Throwable, response: Response?) {
+            close(t)
+        }
+    })
+    awaitClose { socket.cancel() }
+}
@@ -0,0 +1,85 @@
+package ch.heigvd.pro.b04.android.network
+
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.ExperimentalCoroutinesApi
+import kotlinx.coroutines.Job
+import kotlinx.coroutines.flow.*
+import kotlinx.coroutines.launch
+
+/**
+ * Turns a cold [Flow] into a hot [Flow] that is shared amongst all its collectors. The upstream
+ * [Flow] is collected at most once in [scope], as long as there is at least one collector, and is
+ * cancelled when the last collector goes away.
+ *
+ * @param scope The [CoroutineScope] in which the upstream [Flow] is collected.
+ * @param replayLatest True if new collectors should immediately receive the latest value.
+ */
+@ExperimentalCoroutinesApi
+fun <T : Any> Flow<T>.multicastIn(scope: CoroutineScope, replayLatest: Boolean = true): MulticastFlow<T> =
+        Multicast(this, scope).asFlow(replayLatest)
+
+/**
+ * A hot [Flow] returned by [multicastIn], which knows how many collectors it currently has.
+ */
+interface MulticastFlow<T> : Flow<T> {
+
+    /**
+     * The number of coroutines currently collecting this [Flow].
+     */
+    val collectors: Int
+}
+
+/**
+ * A box that is compared by identity, so that two equal consecutive values are still delivered to
+ * the collectors of a [MutableStateFlow].
+ */
+private class Box<T>(val value: T)
+
+@ExperimentalCoroutinesApi
+private class Multicast<T : Any>(
+        private val upstream: Flow<T>,
+        private val scope: CoroutineScope
+) {
+    private val latest = MutableStateFlow<Box<T>?>(null)
+    private var collectors = 0
+    private var job: Job? = null
+
+    fun asFlow(replayLatest: Boolean): MulticastFlow<T> {
+        val shared = flow {
+            val skipped = if (replayLatest) null else latest.value
+            subscribe()
+            try {
+                emitAll(latest
+                        .filterNotNull()
+                        .filter { it !== skipped }
+                        .map { it.value })
+            } finally {
+                unsubscribe()
+            }
+        }
+        return object : MulticastFlow<T>, Flow<T> by shared {
+            override val collectors: Int
+                get() = collectorCount()
+        }
+    }
+
+    @Synchronized
+    private fun collectorCount() = collectors
+
+    @Synchronized
+    private fun subscribe() {
+        collectors += 1
+        if (job == null) {
+            job = scope.launch { upstream.collect { latest.value = Box(it) } }
+        }
+    }
+
+    @Synchronized
+    private fun unsubscribe() {
+        collectors -= 1
+        if (collectors == 0) {
+            job?.cancel()
+            job = null
+        }
+    }
+}
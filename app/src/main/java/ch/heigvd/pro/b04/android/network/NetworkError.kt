@@ -6,6 +6,7 @@ import kotlinx.coroutines.flow.filter
 import kotlinx.coroutines.flow.filterNotNull
 import kotlinx.coroutines.flow.map
 import retrofit2.Response
+import java.net.HttpURLConnection.HTTP_NOT_MODIFIED
 
 sealed class NetworkError {
     object TokenNotValid : NetworkError()
@@ -23,7 +24,7 @@ private fun <T> errorFrom(response: Response<T>): NetworkError? {
 }
 
 fun <T> Flow<Response<T>>.keepError() : Flow<NetworkError> =
-    filter { it.isSuccessful.not() }
+    filter { it.isSuccessful.not() && it.code() != HTTP_NOT_MODIFIED }
         .map {
             Log.i("localDebug", "Network error : " + it.raw())
             errorFrom(it)
@@ -0,0 +1,319 @@
+package ch.heigvd.pro.b04.android.network
+
+import androidx.annotation.VisibleForTesting
+import ch.heigvd.pro.b04.android.BuildConfig
+import ch.heigvd.pro.b04.android.datamodel.Answer
+import ch.heigvd.pro.b04.android.datamodel.Poll
+import ch.heigvd.pro.b04.android.datamodel.Question
+import kotlinx.coroutines.*
+import kotlinx.coroutines.flow.*
+import retrofit2.Response
+import java.util.concurrent.ConcurrentHashMap
+
+/**
+ * The refresh delay of the polling loop while the live update channel is connected. Polling then
+ * only acts as a safety net, in case a notification gets lost.
+ */
+private const val LIVE_DELAY : Long = 30_000
+
+/**
+ * How long to wait before trying to reconnect to the live update channel after it dropped.
+ */
+private const val LIVE_RETRY_DELAY : Long = 5_000
+
+/**
+ * A process-wide repository that owns the polling pipeline of a single poll. All the screens that
+ * display the same poll share a single instance, so the backend only sees one polling loop per
+ * poll, no matter how many ViewModels are currently alive.
+ *
+ * Instances are reference counted : use [acquire] to retrieve the repository of a poll, and call
+ * [release] once it is not needed anymore. The polling stops when the last user releases it.
+ *
+ * All the exposed [Flow]s are hot and shared : each request is performed once per tick, no matter
+ * how many collectors there are, and new collectors immediately receive the latest value. Each
+ * endpoint is refreshed at its own pace, as decided by its [RefreshScheduler].
+ *
+ * If [BuildConfig.LIVE_UPDATES] is set, the repository also listens to the changes pushed by the
+ * server, and refreshes its data as soon as they are notified. It automatically falls back to
+ * regular polling whenever the live update channel is not connected.
+ */
+@FlowPreview
+@ExperimentalCoroutinesApi
+class PollRepository private constructor(private val key: Key) : PollSource {
+
+    /**
+     * The identifier of a [PollRepository]. Answers are specific to a participant, so the token
+     * is part of the key.
+     */
+    data class Key(val idModerator: Long, val idPoll: Long, val token: String)
+
+    private val scope = CoroutineScope(SupervisorJob() + Dispatchers.IO)
+    private var references = 0
+
+    /**
+     * True while the live update channel is connected.
+     */
+    private val liveConnected = MutableStateFlow(false)
+
+    private val pollScheduler = refreshSchedulers(Endpoint.POLL)
+    private val questionsScheduler = refreshSchedulers(Endpoint.QUESTIONS)
+    private val answersSchedulers = ConcurrentHashMap<Long, RefreshScheduler>()
+
+    /**
+     * The raw responses of the poll, shared by [poll] and [networkErrors]. Their latest value
+     * might be a 304 Not Modified, so the bodies are only ever replayed by [poll].
+     */
+    private val polls: Flow<Response<Poll>> =
+            periodically(Endpoint.POLL, pollScheduler, ::pollChanged) {
+                Rockin.api.getPollSuspending(key.idModerator, key.idPoll, key.token, it)
+            }.multicastIn(scope)
+
+    /**
+     * A [Flow] of the latest [Poll] information. The [SessionSnapshot] of the poll, if any, is
+     * emitted first.
+     */
+    val poll: MulticastFlow<Poll> = polls.keepBody()
+            .onEach { poll ->
+                snapshot { if (it.poll != null && !pollChanged(it.poll, poll)) it else it.copy(poll = poll) }
+            }
+            .onStart { snapshot()?.poll?.let { emit(it) } }
+            .multicastIn(scope)
+
+    /**
+     * The raw responses of the questions, shared by [questions] and [networkErrors].
+     */
+    private val requestQuestions: Flow<Response<List<Question>>> =
+            periodically(Endpoint.QUESTIONS, questionsScheduler, ::questionsChanged) {
+                Rockin.api.getQuestionsSuspending(key.idModerator, key.idPoll, key.token, it)
+            }.multicastIn(scope)
+
+    private val requestAnswers = ConcurrentHashMap<Long, Flow<List<Answer>>>()
+
+    /**
+     * A [Flow] of the latest list of [Question] of the poll, sorted with [Question.ORDER]. The
+     * sorting is done once per response, away from the main thread. The [SessionSnapshot] of the
+     * poll, if any, is emitted first.
+     */
+    override val questions: MulticastFlow<List<Question>> = requestQuestions.keepBody()
+            .map { it.sortedWith(Question.ORDER) }
+            .onEach { questions ->
+                snapshot { if (!questionsChanged(it.questions, questions)) it else it.copy(questions = questions) }
+            }
+            .onStart { snapshot()?.questions?.takeIf { it.isNotEmpty() }?.let { emit(it) } }
+            .multicastIn(scope)
+
+    /**
+     * The [VoteOutbox] through which the votes of the participant are sent.
+     */
+    val votes = VoteOutbox(scope, key.token)
+
+    override val voteResults: Flow<VoteResult>
+        get() = votes.results
+
+    override suspend fun submit(answer: Answer) = votes.submit(answer)
+
+    /**
+     * A [Flow] of all the [NetworkError] that are encountered by the polling pipeline.
+     */
+    override val networkErrors: MulticastFlow<NetworkError> =
+            merge(requestQuestions.keepError(), polls.keepError())
+                    .multicastIn(scope, replayLatest = false)
+
+    /**
+     * The number of collectors of the poll, the questions and the network errors, so that the
+     * tests can check that no screen leaves its collectors behind.
+     */
+    @VisibleForTesting
+    internal val collectors: Int
+        get() = poll.collectors + questions.collectors + networkErrors.collectors
+
+    /**
+     * Returns a [Flow] of the latest list of [Answer] for a certain [Question]. The answers are
+     * only fetched while they are being collected. The answers of the [SessionSnapshot] of the
+     * poll, if any, are emitted first.
+     */
+    override fun answers(question: Question): Flow<List<Answer>> = requestAnswers
+            .getOrPut(question.idQuestion) {
+                val scheduler = answersSchedulers.getOrPut(question.idQuestion) {
+                    refreshSchedulers(Endpoint.ANSWERS)
+                }
+                periodically(Endpoint.ANSWERS, scheduler, ::answersChanged) {
+                    RockinAPI.getAnswersSuspending(question, key.token, it)
+                }.keepBody()
+                        .onEach { answers ->
+                            snapshot {
+                                val previous = it.answers[question.idQuestion]
+                                if (previous != null && !answersChanged(previous, answers)) it
+                                else it.copy(answers = it.answers + (question.idQuestion to answers))
+                            }
+                        }
+                        .onStart { snapshot()?.answers?.get(question.idQuestion)?.let { emit(it) } }
+                        .multicastIn(scope)
+            }
+
+    /**
+     * Returns the [SessionSnapshot] of this poll, if it is the last session of the participant.
+     * The snapshot is kept up to date with the latest responses, so it is never older than the
+     * values replayed by the shared [Flow]s.
+     */
+    private fun snapshot(): SessionSnapshot? = SessionSnapshots.get(key.token)
+            ?.takeIf { it.idModerator == key.idModerator && it.idPoll == key.idPoll }
+
+    /**
+     * Updates the [SessionSnapshot] of this poll with the latest known data. The transform should
+     * return the very same snapshot if the data did not change, so the snapshot is not rewritten.
+     */
+    private fun snapshot(transform: (SessionSnapshot) -> SessionSnapshot) =
+            SessionSnapshots.update(key.token, key.idModerator, key.idPoll, transform)
+
+    /**
+     * The current refresh interval of the poll, for metrics.
+     */
+    val pollRefreshInterval: StateFlow<Long>
+        get() = pollScheduler.interval
+
+    /**
+     * The current refresh interval of the questions, for metrics.
+     */
+    val questionsRefreshInterval: StateFlow<Long>
+        get() = questionsScheduler.interval
+
+    /**
+     * The current refresh interval of the answers of a [Question], for metrics. Returns null if
+     * the answers of this [Question] have never been requested.
+     */
+    fun answersRefreshInterval(question: Question): StateFlow<Long>? =
+            answersSchedulers[question.idQuestion]?.interval
+
+    /**
+     * Returns a [Flow] that performs a request each time the [RefreshScheduler] decides it. The
+     * scheduler is informed whether each response changed compared to the previous one. Failed
+     * and not modified responses are considered unchanged.
+     *
+     * The last known response is first looked up in the HTTP cache, within the max-stale setting
+     * of the [Endpoint], and emitted right away if found : it is then revalidated by the first
+     * network request.
+     *
+     * @param request Performs the request. Its argument is the accepted staleness, in seconds, of
+     *                a cache-only request, or null for a network request.
+     */
+    private fun <T : Any> periodically(
+            endpoint: Endpoint,
+            scheduler: RefreshScheduler,
+            changed: (T, T) -> Boolean,
+            request: suspend (maxStale: Int?) -> Response<T>
+    ): Flow<Response<T>> = flow {
+        try {
+            val cached = request(endpoint.maxStale)
+            if (cached.isSuccessful) emit(cached)
+        } catch (any: Exception) {
+            // Nothing usable in the cache.
+        }
+
+        var previous: T? = null
+        while (true) {
+            try {
+                val response = request(null)
+                val body = response.body()
+                scheduler.onResult(body != null && (previous == null || changed(previous, body)))
+                if (body != null) previous = body
+                emit(response)
+            } catch (any: Exception) {
+                scheduler.onResult(false)
+            }
+            scheduler.awaitNext(if (liveConnected.value) LIVE_DELAY else 0)
+        }
+    }
+
+    init {
+        // The latest values are not known anymore, so the next polled responses need a body.
+        Rockin.conditionalRequests.forget("/mod/${key.idModerator}/poll/${key.idPoll}")
+
+        if (BuildConfig.LIVE_UPDATES) {
+            scope.launch { listenToLiveUpdates() }
+        }
+    }
+
+    /**
+     * Listens to the live update channel of the poll, and refreshes the data whenever a change is
+     * notified. When the channel drops, polling resumes at its regular pace until it reconnects.
+     */
+    private suspend fun listenToLiveUpdates() {
+        while (true) {
+            RockinAPI.liveUpdates(key.idModerator, key.idPoll, key.token)
+                    .onEach { if (it == LiveUpdate.Connected) liveConnected.value = true }
+                    .catch { /* Fall back to polling. */ }
+                    .collect { refresh() }
+            liveConnected.value = false
+            // Some changes might have been missed while the channel was dropping.
+            refresh()
+            delay(LIVE_RETRY_DELAY)
+        }
+    }
+
+    /**
+     * Asks the polling loops to refresh their data as soon as possible, and to go back to their
+     * fastest pace. This should be called after a user action.
+     */
+    override fun refresh() {
+        pollScheduler.reset()
+        questionsScheduler.reset()
+        answersSchedulers.values.forEach { it.reset() }
+    }
+
+    /**
+     * Indicates that this [PollRepository] is not used anymore by the caller. Each call to
+     * [acquire] must be balanced by a call to [release].
+     */
+    fun release() {
+        synchronized(repositories) {
+            references -= 1
+            if (references == 0) {
+                repositories.remove(key)
+                scope.cancel()
+            }
+        }
+    }
+
+    companion object {
+        private val repositories = mutableMapOf<Key, PollRepository>()
+
+        /**
+         * The factory of the [RefreshScheduler] used for each [Endpoint]. It can be replaced to
+         * plug another refresh strategy.
+         */
+        @Volatile
+        var refreshSchedulers: (Endpoint) -> RefreshScheduler = { AdaptiveRefreshScheduler(it.policy) }
+
+        /**
+         * Retrieves the shared [PollRepository] of a certain poll, creating it if needed.
+         */
+        fun acquire(idModerator: Long, idPoll: Long, token: String): PollRepository {
+            synchronized(repositories) {
+                val key = Key(idModerator, idPoll, token)
+                val repository = repositories.getOrPut(key) { PollRepository(key) }
+                repository.references += 1
+                return repository
+            }
+        }
+    }
+}
+
+/**
+ * Returns true if the displayed information of the [Poll] changed.
+ */
+private fun pollChanged(old: Poll, new: Poll): Boolean = old.title != new.title
+
+/**
+ * Returns true if the lists of [Question] differ. [Question.equals] ignores the index in the poll,
+ * so it is compared separately.
+ */
+private fun questionsChanged(old: List<Question>, new: List<Question>): Boolean =
+        old != new || old.map { it.indexInPoll } != new.map { it.indexInPoll }
+
+/**
+ * Returns true if the lists of [Answer] differ. [Answer.equals] ignores the identifier and the
+ * checked state, so they are compared separately.
+ */
+private fun answersChanged(old: List<Answer>, new: List<Answer>): Boolean =
+        old != new || old.map { it.idAnswer to it.isChecked } != new.map { it.idAnswer to it.isChecked }
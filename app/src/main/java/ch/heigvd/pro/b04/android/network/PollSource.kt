@@ -0,0 +1,43 @@
+package ch.heigvd.pro.b04.android.network
+
+import ch.heigvd.pro.b04.android.datamodel.Answer
+import ch.heigvd.pro.b04.android.datamodel.Question
+import kotlinx.coroutines.flow.Flow
+
+/**
+ * The data of a poll that the screens observe, and the actions they perform on it. It is
+ * implemented by the [PollRepository], which shares a single polling pipeline per poll.
+ */
+interface PollSource {
+
+    /**
+     * A [Flow] of the latest list of [Question] of the poll.
+     */
+    val questions: Flow<List<Question>>
+
+    /**
+     * A [Flow] of the [NetworkError]s that are encountered while fetching the poll.
+     */
+    val networkErrors: Flow<NetworkError>
+
+    /**
+     * A [Flow] of the outcome of the votes of the participant.
+     */
+    val voteResults: Flow<VoteResult>
+
+    /**
+     * Returns a [Flow] of the latest list of [Answer] for a certain [Question].
+     */
+    fun answers(question: Question): Flow<List<Answer>>
+
+    /**
+     * Requests an [Answer] to be set to its checked state on the server. This suspends until the
+     * vote is recorded, without blocking the calling thread.
+     */
+    suspend fun submit(answer: Answer)
+
+    /**
+     * Asks for the data to be refreshed as soon as possible.
+     */
+    fun refresh()
+}
@@ -0,0 +1,106 @@
+package ch.heigvd.pro.b04.android.network
+
+import kotlinx.coroutines.ExperimentalCoroutinesApi
+import kotlinx.coroutines.channels.Channel
+import kotlinx.coroutines.flow.MutableStateFlow
+import kotlinx.coroutines.flow.StateFlow
+import kotlinx.coroutines.withTimeoutOrNull
+import kotlin.math.max
+import kotlin.math.min
+import kotlin.random.Random
+
+/**
+ * A data class describing how often an endpoint should be refreshed.
+ *
+ * @param minDelay The delay between two refreshes when the data is changing.
+ * @param maxDelay The maximum delay between two refreshes, when the data does not change.
+ * @param backoff The factor applied to the delay for each response that did not change.
+ * @param jitter The maximum random deviation applied to each delay, as a fraction of the delay.
+ */
+data class RefreshPolicy(
+        val minDelay: Long,
+        val maxDelay: Long,
+        val backoff: Double,
+        val jitter: Double
+)
+
+/**
+ * The different endpoints that are refreshed periodically, with their default [RefreshPolicy].
+ *
+ * @param maxStale How old, in seconds, a cached response may be to be displayed while the first
+ *                 request is in flight.
+ */
+enum class Endpoint(val policy: RefreshPolicy, val maxStale: Int) {
+    POLL(RefreshPolicy(DELAY, 15_000, 2.0, 0.2), 7 * 24 * 3600),
+    QUESTIONS(RefreshPolicy(DELAY, 10_000, 1.5, 0.2), 24 * 3600),
+    ANSWERS(RefreshPolicy(DELAY, 5_000, 1.5, 0.2), 3600),
+}
+
+/**
+ * A scheduler that decides when an endpoint should be refreshed next.
+ */
+@ExperimentalCoroutinesApi
+interface RefreshScheduler {
+
+    /**
+     * The current refresh interval, without jitter. Useful for metrics.
+     */
+    val interval: StateFlow<Long>
+
+    /**
+     * Informs the scheduler about the latest response.
+     *
+     * @param changed True if the response was different from the previous one.
+     */
+    fun onResult(changed: Boolean)
+
+    /**
+     * Snaps back to the fastest refresh rate, and wakes up the current wait, if any. This should
+     * be called after a user action.
+     */
+    fun reset()
+
+    /**
+     * Suspends until the next refresh should happen.
+     *
+     * @param floor The minimum delay to wait, regardless of the current interval.
+     */
+    suspend fun awaitNext(floor: Long = 0)
+}
+
+/**
+ * A [RefreshScheduler] that backs off exponentially while the responses do not change, and adds
+ * some random jitter to each delay so that the clients of a session do not all refresh in sync.
+ */
+@ExperimentalCoroutinesApi
+class AdaptiveRefreshScheduler(
+        private val policy: RefreshPolicy,
+        private val random: Random = Random.Default
+) : RefreshScheduler {
+
+    private val current = MutableStateFlow(policy.minDelay)
+    private val wakeUps = Channel<Unit>(Channel.CONFLATED)
+
+    override val interval: StateFlow<Long>
+        get() = current
+
+    override fun onResult(changed: Boolean) {
+        current.value = if (changed) {
+            policy.minDelay
+        } else {
+            min(policy.maxDelay, (current.value * policy.backoff).toLong())
+        }
+    }
+
+    override fun reset() {
+        current.value = policy.minDelay
+        wakeUps.offer(Unit)
+    }
+
+    override suspend fun awaitNext(floor: Long) {
+        val base = max(current.value, floor)
+        val spread = base * policy.jitter
+        val delay = if (spread > 0) base + random.nextDouble(-spread, spread) else base.toDouble()
+        withTimeoutOrNull(delay.toLong()) { wakeUps.receive() }
+    }
+}
@@ -1,24 +1,216 @@
 package ch.heigvd.pro.b04.android.network
 
+import android.content.Context
+import android.os.SystemClock
+import androidx.annotation.VisibleForTesting
 import ch.heigvd.pro.b04.android.BuildConfig
+import ch.heigvd.pro.b04.android.datamodel.Answer
+import ch.heigvd.pro.b04.android.datamodel.Poll
+import ch.heigvd.pro.b04.android.datamodel.Question
+import ch.heigvd.pro.b04.android.datamodel.Session
+import com.google.gson.Gson
+import com.google.gson.GsonBuilder
+import kotlinx.coroutines.ExperimentalCoroutinesApi
+import okhttp3.*
+import java.io.File
+import java.util.concurrent.TimeUnit
 import retrofit2.Retrofit
 import retrofit2.converter.gson.GsonConverterFactory
 
+/**
+ * The number of idle connections kept alive in the shared pool. The polling loops of a poll all
+ * target the same host, so a few connections are enough for them to be reused.
+ */
+private const val MAX_IDLE_CONNECTIONS = 4
+
+/**
+ * How long an idle connection is kept alive, in minutes.
+ */
+private const val KEEP_ALIVE_DURATION : Long = 5
+
+/**
+ * The maximum number of concurrent requests, overall and to a single host.
+ */
+private const val MAX_REQUESTS = 32
+private const val MAX_REQUESTS_PER_HOST = 8
+
+/**
+ * The timeouts of the requests, in seconds.
+ */
+private const val CONNECT_TIMEOUT : Long = 10
+private const val READ_TIMEOUT : Long = 15
+private const val WRITE_TIMEOUT : Long = 15
+private const val CALL_TIMEOUT : Long = 30
+
+/**
+ * The maximum size of the HTTP cache, in bytes. The least recently used responses are evicted
+ * first.
+ */
+private const val HTTP_CACHE_SIZE : Long = 10 * 1024 * 1024
+
 /**
  * A singleton class, containing some application-level instances that should probably be shared
  * amongst invocations.
  */
 object Rockin {
 
+    /**
+     * The [Gson] instance shared by the whole application. The classes of the data model that are
+     * parsed continuously use streaming adapters rather than reflection.
+     */
+    val gson: Gson = GsonBuilder()
+            .registerTypeAdapter(Poll::class.java, Poll.GsonAdapter().nullSafe())
+            .registerTypeAdapter(Question::class.java, Question.GsonAdapter().nullSafe())
+            .registerTypeAdapter(Answer::class.java, Answer.GsonAdapter().nullSafe())
+            .registerTypeAdapter(Session::class.java, Session.GsonAdapter().nullSafe())
+            .create()
+
+    /**
+     * The [VoteJournal] of the votes that have not been acknowledged by the server yet.
+     */
+    @ExperimentalCoroutinesApi
+    lateinit var journal: VoteJournal
+        private set
+
+    /**
+     * Initializes the instances that depend on the application [Context]. This must be called once,
+     * when the application starts.
+     */
+    @ExperimentalCoroutinesApi
+    fun initialize(context: Context) {
+        journal = VoteJournal(File(context.filesDir, "votes.journal"))
+        SessionSnapshots.initialize(File(context.filesDir, "session.snapshot"))
+        cache = Cache(File(context.cacheDir, "http"), HTTP_CACHE_SIZE)
+    }
+
+    /**
+     * The on-disk HTTP cache, available once [initialize] has been called.
+     */
+    private var cache: Cache? = null
+
+    /**
+     * The [ConditionalRequestInterceptor] that remembers the validators of the polled resources.
+     */
+    val conditionalRequests = ConditionalRequestInterceptor()
+
+    /**
+     * Whether the shared client has been built. Its configuration cannot change anymore once it
+     * has been.
+     */
+    private var built = false
+
+    private val interceptors = mutableListOf<Interceptor>()
+    private val networkInterceptors = mutableListOf<Interceptor>()
+
+    private fun checkNotBuilt() =
+            check(!built) { "The shared client must be configured before the first request is made." }
+
+    /**
+     * Adds an application [Interceptor] to the shared client, for instance to log or to instrument
+     * the requests. This must be called before the first request is made.
+     *
+     * @throws IllegalStateException If the shared client has already been built.
+     */
+    @Synchronized
+    fun addInterceptor(interceptor: Interceptor) {
+        checkNotBuilt()
+        interceptors.add(interceptor)
+    }
+
+    /**
+     * Adds a network [Interceptor] to the shared client, which also sees the redirects and the
+     * actual headers sent on the wire. This must be called before the first request is made.
+     *
+     * @throws IllegalStateException If the shared client has already been built.
+     */
+    @Synchronized
+    fun addNetworkInterceptor(interceptor: Interceptor) {
+        checkNotBuilt()
+        networkInterceptors.add(interceptor)
+    }
+
+    /**
+     * The monotonic clock of the shared client, in milliseconds. The local unit tests, which do
+     * not provide the [SystemClock], replace it before the first request is made.
+     *
+     * @throws IllegalStateException If set once the shared client has been built.
+     */
+    @VisibleForTesting
+    internal var clock: () -> Long = SystemClock::elapsedRealtime
+        @Synchronized set(value) {
+            checkNotBuilt()
+            field = value
+        }
+
+    /**
+     * The [ConnectionWarmer] that opens a connection to the backend ahead of the first request.
+     */
+    private val warmer by lazy { ConnectionWarmer(HttpUrl.get(BuildConfig.API_URL), clock = clock) }
+
+    /**
+     * The [OkHttpClient] shared by all the requests. Its connections are pooled and kept alive
+     * between the ticks of the polling loops, and multiplexed when the server supports HTTP/2.
+     */
+    internal val client: OkHttpClient by lazy(this) {
+        built = true
+        val dispatcher = Dispatcher().apply {
+            maxRequests = MAX_REQUESTS
+            maxRequestsPerHost = MAX_REQUESTS_PER_HOST
+        }
+        OkHttpClient.Builder()
+                .connectionPool(ConnectionPool(MAX_IDLE_CONNECTIONS, KEEP_ALIVE_DURATION, TimeUnit.MINUTES))
+                .dispatcher(dispatcher)
+                .protocols(listOf(Protocol.HTTP_2, Protocol.HTTP_1_1))
+                .connectTimeout(CONNECT_TIMEOUT, TimeUnit.SECONDS)
+                .readTimeout(READ_TIMEOUT, TimeUnit.SECONDS)
+                .writeTimeout(WRITE_TIMEOUT, TimeUnit.SECONDS)
+                .callTimeout(CALL_TIMEOUT, TimeUnit.SECONDS)
+                .retryOnConnectionFailure(true)
+                .cache(cache)
+                .addInterceptor(warmer)
+                .apply { interceptors.forEach { addInterceptor(it) } }
+                .addInterceptor(CachePolicyInterceptor())
+                .addInterceptor(conditionalRequests)
+                .apply { networkInterceptors.forEach { addNetworkInterceptor(it) } }
+                .build()
+    }
+
+    /**
+     * The [OkHttpClient] used for long-lived WebSockets. It shares the connection pool and the
+     * dispatcher of the main client, but never times out on reads, and relies on pings to detect
+     * dropped connections instead.
+     */
+    internal val liveClient: OkHttpClient by lazy {
+        client.newBuilder()
+                .readTimeout(0, TimeUnit.MILLISECONDS)
+                .callTimeout(0, TimeUnit.MILLISECONDS)
+                .pingInterval(15, TimeUnit.SECONDS)
+                .build()
+    }
+
+    /**
+     * Opens a connection to the backend in the background, so the next request does not pay for
+     * its setup. This should be called as soon as a request becomes likely, for instance while the
+     * participant enters a code. The connection is dropped if it stays unused.
+     */
+    @JvmStatic
+    fun prewarm() {
+        warmer.warm(client)
+    }
+
     /**
      * The [RockinAPI] instance that should be used across the application to make some requests.
      */
     @get:JvmName("api")
     @get:JvmStatic
-    val api: RockinAPI = Retrofit.Builder()
-            .baseUrl(BuildConfig.API_URL)
-            .addConverterFactory(GsonConverterFactory.create())
-            .addCallAdapterFactory(LiveDataCallAdapterFactory())
-            .build()
-            .create(RockinAPI::class.java)
+    val api: RockinAPI by lazy {
+        Retrofit.Builder()
+                .baseUrl(BuildConfig.API_URL)
+                .client(client)
+                .addConverterFactory(CborConverterFactory(gson))
+                .addConverterFactory(GsonConverterFactory.create(gson))
+                .addCallAdapterFactory(LiveDataCallAdapterFactory())
+                .build()
+                .create(RockinAPI::class.java)
+    }
 }
\ No newline at end of file
@@ -1,23 +1,30 @@
 package ch.heigvd.pro.b04.android.network
 
 import androidx.lifecycle.LiveData
+import ch.heigvd.pro.b04.android.BuildConfig
 import ch.heigvd.pro.b04.android.datamodel.*
-import okhttp3.ResponseBody
-import retrofit2.Call
+import kotlinx.coroutines.ExperimentalCoroutinesApi
+import kotlinx.coroutines.flow.Flow
+import okhttp3.HttpUrl
 import retrofit2.Response
 import retrofit2.http.*
 
 interface RockinAPI {
     @POST("/connect")
-    fun postConnect(
+    suspend fun postConnectSuspending(
             @Body code: SessionCode?
-    ): Call<Token?>
+    ): Response<Token>
 
     @GET("/session")
     fun getSession(
             @Query("token") userToken: String?
     ): LiveData<ApiResponse<Session?>?>
 
+    @GET("/session")
+    suspend fun getSessionSuspending(
+            @Query("token") userToken: String?
+    ): Response<Session>
+
     @GET("/mod/{idModerator}/poll/{idPoll}")
     fun getPoll(
             @Path("idModerator") idModerator: Long,
@@ -26,25 +33,31 @@ interface RockinAPI {
     ): LiveData<ApiResponse<Poll?>?>
 
     @GET("/mod/{idModerator}/poll/{idPoll}")
+    @Headers(CONDITIONAL, ACCEPT_COMPACT)
     suspend fun getPollSuspending(
             @Path("idModerator") idModerator: Long,
             @Path("idPoll") idPoll: Long,
-            @Query("token") userToken: String?
+            @Query("token") userToken: String?,
+            @Header(MAX_STALE_HEADER_NAME) maxStale: Int?
     ): Response<Poll>
 
     @GET("/mod/{idModerator}/poll/{idPoll}/question")
+    @Headers(CONDITIONAL, ACCEPT_COMPACT)
     suspend fun getQuestionsSuspending(
             @Path("idModerator") idModerator: Long,
             @Path("idPoll") idPoll: Long,
-            @Query("token") userToken: String?
+            @Query("token") userToken: String?,
+            @Header(MAX_STALE_HEADER_NAME) maxStale: Int?
     ): Response<List<Question>>
 
     @GET("/mod/{idModerator}/poll/{idPoll}/question/{idQuestion}/answer")
+    @Headers(CONDITIONAL, ACCEPT_COMPACT)
     suspend fun getAnswersSuspending(
             @Path("idModerator") idModerator: Long,
             @Path("idPoll") idPoll: Long,
             @Path("idQuestion") idQuestion: Long,
-            @Query("token") token: String?
+            @Query("token") token: String?,
+            @Header(MAX_STALE_HEADER_NAME) maxStale: Int?
     ): Response<List<Answer>>
 
     @PUT("/mod/{idModerator}/poll/{idPoll}/question/{idQuestion}/answer/{idAnswer}/vote")
@@ -55,7 +68,7 @@ interface RockinAPI {
         @Path("idAnswer") idAnswer: Long,
         @Query("token") token: String?,
         @Body answer: Answer?
-    ): ResponseBody
+    ): Response<Unit>
 
     /* Those methods are simply wrappers to give objects rather than a lot of primitive types */
     companion object {
@@ -63,20 +76,47 @@ interface RockinAPI {
             return Rockin.api.getQuestionsSuspending(
                     poll.idModerator.toLong(),
                     poll.idPoll.toLong(),
-                    userToken
+                    userToken,
+                    null
             )
         }
 
-        suspend fun getAnswersSuspending(question: Question, token: String): Response<List<Answer>> {
+        /**
+         * Fetches the answers of a [Question]. If [maxStale] is set, only the cache is looked up,
+         * and a response up to [maxStale] seconds stale is accepted.
+         */
+        suspend fun getAnswersSuspending(
+                question: Question,
+                token: String,
+                maxStale: Int? = null
+        ): Response<List<Answer>> {
             return Rockin.api.getAnswersSuspending(
                     question.idModerator,
                     question.idPoll,
                     question.idQuestion,
-                    token
+                    token,
+                    maxStale
             )
         }
 
-        suspend fun voteForAnswerSuspending(answer: Answer, token: String?): ResponseBody {
+        /**
+         * Returns a [Flow] of the [LiveUpdate] pushed by the server for a certain poll. Unlike the
+         * other requests, this one is a WebSocket, and is not backed by Retrofit.
+         */
+        @ExperimentalCoroutinesApi
+        fun liveUpdates(idModerator: Long, idPoll: Long, token: String): Flow<LiveUpdate> {
+            val url = HttpUrl.get(BuildConfig.API_URL).newBuilder()
+                    .addPathSegments("mod/$idModerator/poll/$idPoll/live")
+                    .addQueryParameter("token", token)
+                    .build()
+            return openLiveUpdates(Rockin.liveClient, url)
+        }
+
+        /**
+         * Votes for an [Answer]. The body of the response is always discarded and closed, so the
+         * connection goes straight back to the pool.
+         */
+        suspend fun voteForAnswerSuspending(answer: Answer, token: String?): Response<Unit> {
             return Rockin.api.voteForAnswerSuspending(
                 answer.idModerator,
                 answer.idPoll,
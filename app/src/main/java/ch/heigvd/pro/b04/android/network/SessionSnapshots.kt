@@ -0,0 +1,195 @@
+package ch.heigvd.pro.b04.android.network
+
+import androidx.annotation.VisibleForTesting
+import androidx.lifecycle.LiveData
+import androidx.lifecycle.liveData
+import ch.heigvd.pro.b04.android.datamodel.Answer
+import ch.heigvd.pro.b04.android.datamodel.Poll
+import ch.heigvd.pro.b04.android.datamodel.Question
+import com.google.gson.JsonParseException
+import com.google.gson.annotations.SerializedName
+import kotlinx.coroutines.*
+import kotlinx.coroutines.channels.Channel
+import java.io.File
+import java.io.IOException
+
+/**
+ * How long the changes of the snapshot are batched before being written to the disk.
+ */
+private const val SNAPSHOT_WRITE_DELAY : Long = 1000
+
+/**
+ * A data class representing what the participant last saw of a session : enough to render the
+ * poll screen right away on the next launch, while the data is revalidated in the background.
+ *
+ * @param answers The last known answers of the visited questions, with the checked state of the
+ *                participant, indexed by question identifier.
+ */
+data class SessionSnapshot(
+        @SerializedName("token") val token: String,
+        @SerializedName("idModerator") val idModerator: Long,
+        @SerializedName("idPoll") val idPoll: Long,
+        @SerializedName("poll") val poll: Poll?,
+        @SerializedName("questions") val questions: List<Question>,
+        @SerializedName("answers") val answers: Map<Long, List<Answer>>
+)
+
+/**
+ * The stored form of a [SessionSnapshot]. Gson does not enforce the nullability of the Kotlin
+ * properties, so a file written by another version is read into nullable fields, then validated.
+ */
+private class StoredSnapshot(
+        @SerializedName("token") val token: String?,
+        @SerializedName("idModerator") val idModerator: Long,
+        @SerializedName("idPoll") val idPoll: Long,
+        @SerializedName("poll") val poll: Poll?,
+        @SerializedName("questions") val questions: List<Question>?,
+        @SerializedName("answers") val answers: Map<Long, List<Answer>>?
+) {
+    fun toSnapshot(): SessionSnapshot? {
+        if (token == null || questions == null || answers == null) return null
+        return SessionSnapshot(token, idModerator, idPoll, poll, questions, answers)
+    }
+}
+
+/**
+ * The store of the [SessionSnapshot] of the last session. The snapshot is read once, in the
+ * background, when the application starts, and is then kept in memory. Its updates are written
+ * to the disk in batches, with an atomic replacement of the previous file.
+ */
+object SessionSnapshots {
+
+    private val scope = CoroutineScope(SupervisorJob() + Dispatchers.IO)
+    private val writes = Channel<Unit>(Channel.CONFLATED)
+    @Volatile
+    private var loaded = CompletableDeferred<Unit>()
+
+    private lateinit var file: File
+
+    @Volatile
+    private var current: SessionSnapshot? = null
+
+    /**
+     * The number of changes made to the snapshot, by both [update] and [clear].
+     */
+    private var version = 0
+
+    /**
+     * Starts reading the snapshot stored in the provided [File], and writing the next updates to
+     * it. This must be called once, when the application starts.
+     */
+    fun initialize(file: File) {
+        this.file = file
+        val loaded = loaded
+        scope.launch {
+            val stored = read()
+            synchronized(this@SessionSnapshots) {
+                // A change made in the meantime is more recent than the stored snapshot.
+                if (version == 0) current = stored
+            }
+            loaded.complete(Unit)
+
+            for (write in writes) {
+                delay(SNAPSHOT_WRITE_DELAY)
+                write(current)
+            }
+        }
+    }
+
+    /**
+     * Returns the snapshot of the last session if it was made with the provided token, and if it
+     * has already been loaded.
+     */
+    fun get(token: String): SessionSnapshot? = current?.takeIf { it.token == token }
+
+    /**
+     * Waits until the stored snapshot has been loaded, then returns it if it was made with the
+     * provided token.
+     */
+    suspend fun await(token: String): SessionSnapshot? {
+        loaded.await()
+        return get(token)
+    }
+
+    /**
+     * Returns a [LiveData] of the snapshot of the last session, once it has been loaded, if it was
+     * made with the provided token. It holds null otherwise.
+     */
+    fun resume(token: String): LiveData<SessionSnapshot?> = liveData { emit(await(token)) }
+
+    /**
+     * Updates the snapshot of a session. If the current snapshot belongs to another session, it is
+     * replaced by an empty one first. If the transform returns the very same snapshot, nothing is
+     * written.
+     */
+    fun update(
+            token: String,
+            idModerator: Long,
+            idPoll: Long,
+            transform: (SessionSnapshot) -> SessionSnapshot
+    ) {
+        synchronized(this) {
+            val previous = current
+            val base = previous?.takeIf {
+                it.token == token && it.idModerator == idModerator && it.idPoll == idPoll
+            } ?: SessionSnapshot(token, idModerator, idPoll, null, emptyList(), emptyMap())
+            val updated = transform(base)
+            if (updated === previous) return
+            current = updated
+            version += 1
+        }
+        writes.offer(Unit)
+    }
+
+    /**
+     * Forgets the snapshot, for instance once the participant leaves the session.
+     */
+    fun clear() {
+        synchronized(this) {
+            current = null
+            version += 1
+        }
+        writes.offer(Unit)
+    }
+
+    /**
+     * Forgets the snapshot and stops using its file, so that the next test can initialize the
+     * store again.
+     */
+    @VisibleForTesting
+    fun reset() {
+        scope.coroutineContext.cancelChildren()
+        synchronized(this) {
+            current = null
+            version = 0
+            loaded = CompletableDeferred()
+        }
+    }
+
+    private fun read(): SessionSnapshot? {
+        if (!file.exists()) return null
+        return try {
+            file.bufferedReader()
+                    .use { Rockin.gson.fromJson(it, StoredSnapshot::class.java) }
+                    ?.toSnapshot()
+        } catch (error: IOException) {
+            null
+        } catch (error: JsonParseException) {
+            null
+        }
+    }
+
+    private fun write(snapshot: SessionSnapshot?) {
+        try {
+            if (snapshot == null) {
+                file.delete()
+                return
+            }
+            val temporary = File(file.path + ".tmp")
+            temporary.bufferedWriter().use { Rockin.gson.toJson(snapshot, it) }
+            temporary.renameTo(file)
+        } catch (error: IOException) {
+            // The snapshot is only an optimization, the next update will try again.
+        }
+    }
+}
@@ -0,0 +1,312 @@
+package ch.heigvd.pro.b04.android.network
+
+import ch.heigvd.pro.b04.android.datamodel.Answer
+import com.google.gson.JsonParseException
+import com.google.gson.annotations.SerializedName
+import kotlinx.coroutines.*
+import kotlinx.coroutines.channels.BroadcastChannel
+import kotlinx.coroutines.channels.Channel
+import kotlinx.coroutines.flow.Flow
+import kotlinx.coroutines.flow.asFlow
+import java.io.File
+import java.io.FileOutputStream
+import java.io.IOException
+
+/**
+ * The number of records appended to a [VoteJournal] since its last compaction before it gets
+ * compacted again.
+ */
+private const val COMPACTION_THRESHOLD = 64
+
+/**
+ * The bounds of the delay between two replays that could not deliver all the pending votes, in
+ * milliseconds. The delay doubles after each failed replay.
+ */
+private const val REPLAY_MIN_BACKOFF : Long = 2_000
+private const val REPLAY_MAX_BACKOFF : Long = 120_000
+
+/**
+ * The identity of a vote : the answer it targets.
+ */
+data class VoteTarget(
+        val idModerator: Long,
+        val idPoll: Long,
+        val idQuestion: Long,
+        val idAnswer: Long
+)
+
+/**
+ * A vote recorded in a [VoteJournal].
+ *
+ * @param sequence The position of the vote in the journal.
+ * @param token The token of the participant who voted.
+ * @param answer The answer, in its desired state.
+ */
+class JournaledVote(
+        val sequence: Long,
+        val token: String,
+        val answer: Answer
+) {
+    val target: VoteTarget
+        get() = VoteTarget(answer.idModerator, answer.idPoll, answer.idQuestion, answer.idAnswer)
+}
+
+/**
+ * The outcome of a vote that was sent by a replay of a [VoteJournal].
+ */
+class ReplayedVote(val vote: JournaledVote, val result: VoteResult)
+
+/**
+ * A line of the journal file. Votes carry a [token] and an [answer], acknowledgements only refer
+ * to the [sequence] of a vote.
+ */
+private class Record(
+        @SerializedName("type") val type: String?,
+        @SerializedName("sequence") val sequence: Long,
+        @SerializedName("token") val token: String? = null,
+        @SerializedName("answer") val answer: Answer? = null
+)
+
+/**
+ * A durable, append-only journal of the votes that have not been acknowledged by the server yet.
+ * Each vote is written to disk before it is sent, so the votes made while the network is flaky
+ * survive the death of the process, and can be replayed once connectivity returns.
+ *
+ * Only the latest vote of each [VoteTarget] is pending : a newer vote supersedes the older ones.
+ * The journal is compacted once enough records have been appended, and truncated once all the
+ * votes have been acknowledged.
+ *
+ * The file is read in the background. All the operations suspend until it has been read, and
+ * access the file on [Dispatchers.IO], so they never block the thread of their caller.
+ *
+ * @param file The file in which the journal is stored.
+ */
+@ExperimentalCoroutinesApi
+class VoteJournal(private val file: File) {
+
+    private val gson = Rockin.gson
+
+    private val pending = LinkedHashMap<VoteTarget, JournaledVote>()
+    private val inFlight = mutableSetOf<Long>()
+    private var sequence = 0L
+    private var records = 0
+
+    /**
+     * The number of records of the journal right after its last compaction.
+     */
+    private var compactedRecords = 0
+
+    private val replays = BroadcastChannel<ReplayedVote>(Channel.BUFFERED)
+    private val wakeups = Channel<Unit>(Channel.CONFLATED)
+
+    /**
+     * A [Flow] of the votes that were acknowledged or rejected by the server while being replayed.
+     */
+    val replayed: Flow<ReplayedVote> = replays.asFlow()
+
+    /**
+     * Completed once the journal file has been read. The file is read in the background, so that
+     * creating the journal does not block the main thread.
+     */
+    private val loaded = CompletableDeferred<Unit>()
+
+    init {
+        CoroutineScope(Dispatchers.IO).launch {
+            load()
+            loaded.complete(Unit)
+            // The votes left over by a previous process should be replayed.
+            wakeups.offer(Unit)
+        }
+    }
+
+    /**
+     * Suspends until the journal file has been read, then runs the block on [Dispatchers.IO] while
+     * holding the lock of the journal.
+     */
+    private suspend fun <T> whenLoaded(block: () -> T): T {
+        loaded.await()
+        return withContext(Dispatchers.IO) { synchronized(this@VoteJournal, block) }
+    }
+
+    /**
+     * Records a vote before it gets sent. The returned vote is considered in flight, and will not
+     * be replayed until it is [released].
+     */
+    suspend fun append(answer: Answer, token: String): JournaledVote = whenLoaded {
+        val vote = JournaledVote(++sequence, token, answer)
+        write(Record(TYPE_VOTE, vote.sequence, token, answer))
+        pending.remove(vote.target)
+        pending[vote.target] = vote
+        inFlight.add(vote.sequence)
+        vote
+    }
+
+    /**
+     * Indicates that a vote has been delivered, or that it should never be sent again.
+     */
+    suspend fun acknowledge(vote: JournaledVote) = whenLoaded {
+        inFlight.remove(vote.sequence)
+        if (pending[vote.target]?.sequence != vote.sequence) {
+            // The vote has been superseded, and is not pending anymore.
+            return@whenLoaded
+        }
+        write(Record(TYPE_ACK, vote.sequence))
+        pending.remove(vote.target)
+        compactIfNeeded()
+    }
+
+    /**
+     * Indicates that a vote could not be delivered, and that it should be replayed later. This
+     * completes even if the caller is being cancelled, so it may be used to clean up.
+     */
+    suspend fun release(vote: JournaledVote) {
+        withContext(NonCancellable) {
+            whenLoaded { inFlight.remove(vote.sequence) }
+        }
+        wakeups.offer(Unit)
+    }
+
+    /**
+     * Asks for the pending votes to be replayed right away, for instance once connectivity returns.
+     */
+    fun wake() {
+        wakeups.offer(Unit)
+    }
+
+    /**
+     * Replays the pending votes for as long as the caller is active. A replay is made whenever
+     * some votes could not be delivered, or when [wake] is called. If a replay does not deliver
+     * all the votes, the next one is made after an exponential backoff, so that votes which failed
+     * with a timeout or a server error are retried even if the network does not change.
+     */
+    suspend fun replayContinuously() {
+        var backoff = REPLAY_MIN_BACKOFF
+        while (true) {
+            wakeups.receive()
+            while (!replay()) {
+                withTimeoutOrNull(backoff) { wakeups.receive() }
+                backoff = minOf(backoff * 2, REPLAY_MAX_BACKOFF)
+            }
+            backoff = REPLAY_MIN_BACKOFF
+        }
+    }
+
+    /**
+     * Sends the pending votes that are not in flight, in the order they were made. The replay
+     * stops at the first failed delivery, and the remaining votes are kept for the next replay.
+     * Votes that are rejected by the server are dropped, and reported as failed.
+     *
+     * @return True if no vote is left to replay.
+     */
+    suspend fun replay(): Boolean {
+        while (true) {
+            val vote = whenLoaded {
+                pending.values.firstOrNull { it.sequence !in inFlight }
+                        ?.also { inFlight.add(it.sequence) }
+            } ?: return true
+
+            val delivery = try {
+                deliver(vote.answer, vote.token)
+            } catch (error: CancellationException) {
+                release(vote)
+                throw error
+            }
+            when (delivery) {
+                is Delivery.Delivered -> {
+                    acknowledge(vote)
+                    replays.send(ReplayedVote(vote, VoteResult.Acknowledged(vote.answer)))
+                }
+                is Delivery.Rejected -> {
+                    acknowledge(vote)
+                    replays.send(ReplayedVote(vote, VoteResult.Failed(vote.answer, delivery.code)))
+                }
+                is Delivery.Retry -> {
+                    whenLoaded { inFlight.remove(vote.sequence) }
+                    return false
+                }
+            }
+        }
+    }
+
+    private fun load() {
+        if (!file.exists()) return
+        try {
+            file.forEachLine { line ->
+                val record = try {
+                    gson.fromJson(line, Record::class.java)
+                } catch (error: JsonParseException) {
+                    // A partially written line, after a crash.
+                    null
+                } ?: return@forEachLine
+
+                sequence = maxOf(sequence, record.sequence)
+                records += 1
+                when (record.type) {
+                    TYPE_VOTE -> if (record.token != null && record.answer != null) {
+                        val vote = JournaledVote(record.sequence, record.token, record.answer)
+                        pending.remove(vote.target)
+                        pending[vote.target] = vote
+                    }
+                    TYPE_ACK -> pending.values
+                            .firstOrNull { it.sequence == record.sequence }
+                            ?.let { pending.remove(it.target) }
+                }
+            }
+        } catch (error: IOException) {
+            // The journal is unreadable, start from scratch.
+            pending.clear()
+        }
+        compact()
+    }
+
+    private fun write(record: Record) {
+        try {
+            FileOutputStream(file, true).use { stream ->
+                stream.write((gson.toJson(record) + "\n").toByteArray())
+                stream.fd.sync()
+            }
+            records += 1
+        } catch (error: IOException) {
+            // The vote is still sent, it just will not survive the death of the process.
+        }
+    }
+
+    private fun compactIfNeeded() {
+        if (pending.isEmpty() || records - compactedRecords >= COMPACTION_THRESHOLD) {
+            compact()
+        }
+    }
+
+    /**
+     * Rewrites the journal with the pending votes only, then atomically replaces the old file.
+     */
+    private fun compact() {
+        try {
+            if (pending.isEmpty()) {
+                file.delete()
+                records = 0
+                compactedRecords = 0
+                return
+            }
+            val compacted = File(file.path + ".tmp")
+            FileOutputStream(compacted).use { stream ->
+                for (vote in pending.values) {
+                    val record = Record(TYPE_VOTE, vote.sequence, vote.token, vote.answer)
+                    stream.write((gson.toJson(record) + "\n").toByteArray())
+                }
+                stream.fd.sync()
+            }
+            if (compacted.renameTo(file)) {
+                records = pending.size
+            }
+        } catch (error: IOException) {
+            // Keep the journal as is, it will be compacted later.
+        }
+        compactedRecords = records
+    }
+
+    companion object {
+        private const val TYPE_VOTE = "vote"
+        private const val TYPE_ACK = "ack"
+    }
+}
@@ -0,0 +1,208 @@
+package ch.heigvd.pro.b04.android.network
+
+import ch.heigvd.pro.b04.android.datamodel.Answer
+import kotlinx.coroutines.*
+import kotlinx.coroutines.channels.BroadcastChannel
+import kotlinx.coroutines.channels.Channel
+import kotlinx.coroutines.flow.Flow
+import kotlinx.coroutines.flow.asFlow
+import kotlinx.coroutines.flow.filter
+import kotlinx.coroutines.flow.map
+import kotlinx.coroutines.flow.merge
+import java.io.IOException
+import java.net.HttpURLConnection.HTTP_CONFLICT
+
+/**
+ * How long the votes for an answer are coalesced before being sent to the server.
+ */
+const val VOTE_COALESCING_WINDOW : Long = 300
+
+/**
+ * A sealed class representing the outcome of a vote sent by a [VoteOutbox].
+ */
+sealed class VoteResult(val answer: Answer) {
+
+    /**
+     * The server accepted the vote : the [answer] is in its desired state.
+     */
+    class Acknowledged(answer: Answer) : VoteResult(answer)
+
+    /**
+     * The vote could not be delivered yet. It is kept in the [VoteJournal], and will be replayed
+     * later, until it is either acknowledged or rejected.
+     */
+    class Queued(answer: Answer) : VoteResult(answer)
+
+    /**
+     * The vote was rejected by the server with a certain HTTP [code], and the [answer] is not in
+     * its desired state.
+     */
+    class Failed(answer: Answer, val code: Int) : VoteResult(answer)
+}
+
+/**
+ * The outcome of a single vote request.
+ */
+internal sealed class Delivery {
+    object Delivered : Delivery()
+    object Retry : Delivery()
+    class Rejected(val code: Int) : Delivery()
+}
+
+/**
+ * Sends a vote, and tells whether it was delivered, whether it should be sent again later, or
+ * whether it will never be accepted.
+ */
+internal suspend fun deliver(answer: Answer, token: String): Delivery {
+    val response = try {
+        RockinAPI.voteForAnswerSuspending(answer, token)
+    } catch (error: IOException) {
+        return Delivery.Retry
+    }
+    return when {
+        response.isSuccessful -> Delivery.Delivered
+        // Client errors will not be fixed by sending the vote again, except for conflicts.
+        response.code() in 400..499 && response.code() != HTTP_CONFLICT ->
+            Delivery.Rejected(response.code())
+        else -> Delivery.Retry
+    }
+}
+
+/**
+ * An ordered, per-answer write-behind queue of votes. Each answer has its own slot, which only
+ * remembers the latest desired state : the toggles made within [window] are coalesced, and
+ * nothing is sent at all if the answer ends up in its initial state. Each slot sends at most one
+ * request at a time, so the requests of an answer can not arrive out of order.
+ *
+ * Each vote is written to the [VoteJournal] as soon as it is submitted, before the coalescing
+ * window, so that it can be replayed if it can not be delivered right away, or if the outbox is
+ * cancelled before sending it.
+ *
+ * @param scope The [CoroutineScope] in which the votes are sent.
+ * @param token The token of the participant.
+ * @param journal The [VoteJournal] in which the pending votes are recorded.
+ * @param window How long to wait for more toggles before sending a vote.
+ */
+@ExperimentalCoroutinesApi
+class VoteOutbox(
+        private val scope: CoroutineScope,
+        private val token: String,
+        private val journal: VoteJournal = Rockin.journal,
+        private val window: Long = VOTE_COALESCING_WINDOW
+) {
+
+    /**
+     * The state of the votes of a single answer.
+     *
+     * @param confirmed The checked state last known to the server.
+     */
+    private class Slot(var confirmed: Boolean) {
+        var desired: JournaledVote? = null
+        var worker: Job? = null
+
+        /**
+         * The sequence of the latest vote of the slot, so that a vote journaled after a newer one
+         * never replaces it.
+         */
+        var latest = 0L
+    }
+
+    private val slots = mutableMapOf<Long, Slot>()
+    private val outcomes = BroadcastChannel<VoteResult>(Channel.BUFFERED)
+
+    /**
+     * A [Flow] of the outcome of all the votes that are sent, or coalesced away. The outcomes of
+     * the votes of the participant that get replayed by the [VoteJournal] are reported too.
+     */
+    val results: Flow<VoteResult> = merge(
+            outcomes.asFlow(),
+            journal.replayed
+                    .filter { it.vote.token == token }
+                    .map { it.result }
+    )
+
+    /**
+     * Requests an [Answer] to be set to its checked state on the server. This suspends until the
+     * vote is written to the [VoteJournal], which is done on [Dispatchers.IO].
+     */
+    suspend fun submit(answer: Answer) {
+        val vote = journal.append(answer, token)
+        val superseded = synchronized(slots) {
+            val slot = slots.getOrPut(answer.idAnswer) { Slot(!answer.isChecked) }
+            if (vote.sequence < slot.latest) {
+                vote
+            } else {
+                val previous = slot.desired
+                slot.desired = vote
+                slot.latest = vote.sequence
+                if (slot.worker == null) {
+                    slot.worker = scope.launch { drain(answer.idAnswer, slot) }
+                }
+                previous
+            }
+        }
+        // The superseded desired state will never be sent.
+        superseded?.let { journal.acknowledge(it) }
+    }
+
+    /**
+     * Sends the desired state of a [Slot] until it does not change anymore, then forgets it. If
+     * the outbox is cancelled meanwhile, the votes that were not delivered are left to the
+     * [VoteJournal], which replays them.
+     */
+    private suspend fun drain(idAnswer: Long, slot: Slot) {
+        var sending: JournaledVote? = null
+        try {
+            while (true) {
+                delay(window)
+                val vote = synchronized(slots) {
+                    val desired = slot.desired
+                    slot.desired = null
+                    if (desired == null) {
+                        slots.remove(idAnswer)
+                        slot.worker = null
+                    }
+                    desired
+                } ?: return
+                val answer = vote.answer
+
+                if (answer.isChecked == slot.confirmed) {
+                    journal.acknowledge(vote)
+                    outcomes.send(VoteResult.Acknowledged(answer))
+                    continue
+                }
+
+                sending = vote
+                val delivery = deliver(answer, token)
+                sending = null
+                outcomes.send(outcome(slot, vote, delivery))
+            }
+        } catch (error: CancellationException) {
+            sending?.let { journal.release(it) }
+            synchronized(slots) { slot.desired }?.let { journal.release(it) }
+            throw error
+        }
+    }
+
+    /**
+     * Updates the [Slot] and the [VoteJournal] with the [Delivery] of a vote.
+     */
+    private suspend fun outcome(slot: Slot, vote: JournaledVote, delivery: Delivery): VoteResult {
+        val answer = vote.answer
+        return when (delivery) {
+            is Delivery.Delivered -> {
+                journal.acknowledge(vote)
+                slot.confirmed = answer.isChecked
+                VoteResult.Acknowledged(answer)
+            }
+            is Delivery.Rejected -> {
+                journal.acknowledge(vote)
+                VoteResult.Failed(answer, delivery.code)
+            }
+            is Delivery.Retry -> {
+                journal.release(vote)
+                VoteResult.Queued(answer)
+            }
+        }
+    }
+}
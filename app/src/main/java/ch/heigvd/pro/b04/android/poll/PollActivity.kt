@@ -29,7 +29,7 @@ class PollActivity : AppCompatActivity() {
         val idPoll = intent.getIntExtra(EXTRA_ID_POLL, 0)
         val token: String = intent.getStringExtra(EXTRA_TOKEN) ?: "empty"
 
-        tokenLiveData = AuthenticationTokenLiveData(this)
+        tokenLiveData = AuthenticationTokenLiveData.getInstance()
 
         state = ViewModelProvider(this, PollViewModelFactory(
             application,
@@ -40,7 +40,7 @@ class PollActivity : AppCompatActivity() {
 
         // Show the list of questions
         val questionList = findViewById<RecyclerView>(R.id.poll_questions_view)
-        val pollAdapter = PollAdapter(state)
+        val pollAdapter = PollAdapter(this, state::goToQuestion)
         val manager = LinearLayoutManager(this)
 
         questionList.itemAnimator = DefaultItemAnimator()
@@ -51,6 +51,15 @@ class PollActivity : AppCompatActivity() {
         val exitButton = findViewById<Button>(R.id.poll_exit_button)
         exitButton.setOnClickListener { disconnectFromPoll() }
 
+        // Feed the list with the latest snapshots, as long as the activity is alive
+        lifecycleScope.launchWhenStarted {
+            state.poll.collect { pollAdapter.submitTitle(it.title) }
+        }
+
+        lifecycleScope.launchWhenStarted {
+            state.questions.collect { pollAdapter.submitQuestions(it) }
+        }
+
         // React to change of state
         lifecycleScope.launchWhenStarted {
             state.networkErrors().collect {
@@ -1,46 +1,69 @@
 package ch.heigvd.pro.b04.android.poll
 
-import android.graphics.Color
-import android.text.SpannableString
-import android.text.style.ForegroundColorSpan
+import android.content.Context
 import android.view.LayoutInflater
 import android.view.ViewGroup
 import android.widget.Button
 import android.widget.TextView
-import androidx.core.content.ContextCompat
-import androidx.lifecycle.viewModelScope
+import androidx.recyclerview.widget.AsyncDifferConfig
+import androidx.recyclerview.widget.AsyncListDiffer
+import androidx.recyclerview.widget.DiffUtil
 import androidx.recyclerview.widget.RecyclerView
 import ch.heigvd.pro.b04.android.R
 import ch.heigvd.pro.b04.android.datamodel.Question
-import kotlinx.coroutines.FlowPreview
-import kotlinx.coroutines.flow.collect
-import kotlinx.coroutines.flow.map
-import kotlinx.coroutines.launch
-import java.util.*
+import ch.heigvd.pro.b04.android.utils.OffsetListUpdateCallback
+import ch.heigvd.pro.b04.android.utils.RowText
+import ch.heigvd.pro.b04.android.utils.RowTextCache
+import kotlinx.coroutines.suspendCancellableCoroutine
+import kotlin.coroutines.resume
+
+/**
+ * The adapter of the list of questions of a poll. It does not observe the [PollViewModel] by
+ * itself : the owner of the list feeds it with immutable snapshots through [submitTitle] and
+ * [submitQuestions], from a collector bound to its own lifecycle.
+ *
+ * @param onQuestionSelected Called when the participant clicks on a question.
+ */
+class PollAdapter(
+        context: Context,
+        private val onQuestionSelected: (Question) -> Unit
+) : RecyclerView.Adapter<RecyclerView.ViewHolder>() {
+
+    /**
+     * The displayed questions are diffed on a background thread, and only the rows that actually
+     * changed are rebound.
+     */
+    private val differ = AsyncListDiffer<Question>(
+            OffsetListUpdateCallback(this, HEADER_COUNT),
+            AsyncDifferConfig.Builder(QUESTION_DIFF).build()
+    )
+
+    private val questions: List<Question>
+        get() = differ.currentList
+
+    private val texts = RowTextCache(context).apply {
+        // The first rows are prefetched before any of them is created.
+        attachPrototype(context, R.layout.poll_question, R.id.poll_question_item)
+    }
 
-@FlowPreview
-class PollAdapter(private val state: PollViewModel) : RecyclerView.Adapter<RecyclerView.ViewHolder>() {
+    private var title: String = ""
 
-    private var questions: List<Question> = LinkedList()
     override fun getItemId(position: Int): Long {
         return when (position) {
             0 -> HEADER_ID
             1 -> INSTRUCTION_ID
-            else -> questions[position - 2].idQuestion
+            else -> questions[position - HEADER_COUNT].idQuestion
         }
     }
 
-    private class HeaderViewHolder(parent: ViewGroup,
-                                   state: PollViewModel
-    ) : RecyclerView.ViewHolder(LayoutInflater.from(parent.context)
+    private class HeaderViewHolder(parent: ViewGroup)
+        : RecyclerView.ViewHolder(LayoutInflater.from(parent.context)
             .inflate(R.layout.poll_title, parent, false)) {
 
         private val title: TextView = itemView.findViewById(R.id.poll_title)
 
-        init {
-            state.viewModelScope.launch {
-                state.poll.collect { poll -> title.text = poll.title }
-            }
+        fun bindTitle(text: String) {
+            title.text = text
         }
     }
 
@@ -54,43 +77,25 @@ class PollAdapter(private val state: PollViewModel) : RecyclerView.Adapter<Recyc
         }
     }
 
-    @FlowPreview
-    private inner class QuestionViewHolder(private val parent: ViewGroup)
+    private inner class QuestionViewHolder(parent: ViewGroup)
         : RecyclerView.ViewHolder(LayoutInflater.from(parent.context)
             .inflate(R.layout.poll_question, parent, false)) {
 
         private val questionButton: Button = itemView.findViewById(R.id.poll_question_item)
 
-        fun bindQuestion(question: Question) {
-
-            questionButton.setOnClickListener { state.goToQuestion(question) }
-
-            var text = question.title
-
-            if (question.details != null && question.details != "") {
-                text += "\n" + question.details
-            }
-
-            val spannable = SpannableString(text)
-            spannable.setSpan(ForegroundColorSpan(Color.BLACK), 0, question.title.length, 0 )
-
-            if (question.details != null && question.details != "") {
-                spannable.setSpan(
-                    ForegroundColorSpan(ContextCompat
-                        .getColor(parent.context, R.color.colorDescription)),
-                    question.title.length + 1,
-                    text.length,
-                    0
-                )
-            }
+        init {
+            texts.attach(questionButton)
+        }
 
-            questionButton.text = spannable
+        fun bindQuestion(question: Question) {
+            questionButton.setOnClickListener { onQuestionSelected(question) }
+            texts.bind(questionButton, question.toRowText())
         }
     }
 
     override fun onCreateViewHolder(parent: ViewGroup, viewType: Int): RecyclerView.ViewHolder {
         return when (viewType) {
-            VIEW_TYPE_HEADER -> HeaderViewHolder(parent, state)
+            VIEW_TYPE_HEADER -> HeaderViewHolder(parent)
             VIEW_TYPE_INSTRUCTION -> InstructionViewHolder(parent)
             VIEW_TYPE_QUESTION -> QuestionViewHolder(parent)
             else -> throw IllegalStateException("Unknown view type.")
@@ -98,14 +103,17 @@ class PollAdapter(private val state: PollViewModel) : RecyclerView.Adapter<Recyc
     }
 
     override fun onBindViewHolder(holder: RecyclerView.ViewHolder, position: Int) {
-        if (position > 1) {
-            val q = questions[position - 2]
+        if (position == 0) {
+            (holder as HeaderViewHolder).bindTitle(title)
+        }
+        if (position >= HEADER_COUNT) {
+            val q = questions[position - HEADER_COUNT]
             (holder as QuestionViewHolder).bindQuestion(q)
         }
     }
 
     override fun getItemCount(): Int {
-        return questions.size + 2
+        return questions.size + HEADER_COUNT
     }
 
     override fun getItemViewType(position: Int): Int {
@@ -122,17 +130,46 @@ class PollAdapter(private val state: PollViewModel) : RecyclerView.Adapter<Recyc
         private const val VIEW_TYPE_INSTRUCTION = 2
         private const val HEADER_ID: Long = -1
         private const val INSTRUCTION_ID: Long = -2
+        private const val HEADER_COUNT = 2
+
+        /**
+         * Questions are identified by their identifier. Since [Question.equals] ignores the index
+         * in the poll, it is compared separately.
+         */
+        private val QUESTION_DIFF = object : DiffUtil.ItemCallback<Question>() {
+            override fun areItemsTheSame(oldItem: Question, newItem: Question): Boolean =
+                    oldItem.idQuestion == newItem.idQuestion
+
+            override fun areContentsTheSame(oldItem: Question, newItem: Question): Boolean =
+                    oldItem == newItem && oldItem.indexInPoll == newItem.indexInPoll
+        }
+    }
+
+    /**
+     * Displays the title of the poll in the header row.
+     */
+    fun submitTitle(text: String) {
+        if (title != text) {
+            title = text
+            notifyItemChanged(0)
+        }
+    }
+
+    /**
+     * Displays a new list of questions. Their texts are prepared before the list is diffed, and
+     * this returns once the list is displayed, so a collector never diffs a list that is already
+     * stale.
+     */
+    suspend fun submitQuestions(questions: List<Question>) {
+        texts.prefetch(questions.map { it.toRowText() })
+        suspendCancellableCoroutine<Unit> { continuation ->
+            differ.submitList(questions) { continuation.resume(Unit) }
+        }
     }
 
     init {
         setHasStableIds(true)
-        state.viewModelScope.launch {
-            state.questions
-                .map { it.sortedBy { question -> question.indexInPoll } }
-                .collect {
-                    questions = it
-                    notifyDataSetChanged()
-                }
-        }
     }
-}
\ No newline at end of file
+}
+
+private fun Question.toRowText(): RowText = RowText(idQuestion, title, details)
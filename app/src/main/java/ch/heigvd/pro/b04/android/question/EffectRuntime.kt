@@ -0,0 +1,117 @@
+package ch.heigvd.pro.b04.android.question
+
+import kotlinx.coroutines.*
+import kotlinx.coroutines.channels.Channel
+import kotlinx.coroutines.flow.*
+import kotlinx.coroutines.sync.Semaphore
+import kotlinx.coroutines.sync.withPermit
+import java.util.concurrent.atomic.AtomicInteger
+
+/**
+ * The maximum number of effects that may run concurrently.
+ */
+private const val EFFECT_CONCURRENCY = 4
+
+/**
+ * The maximum number of [Event]s produced by effects that wait to be processed. Effects suspend
+ * when this buffer is full.
+ */
+private const val EFFECT_BUFFER_CAPACITY = 64
+
+/**
+ * A class representing a side effect requested by the reducer, as a [Flow] of [Event]s that will be
+ * fed back into the event loop.
+ *
+ * @param events The [Event]s that the effect produces.
+ * @param key An optional key. At most one effect runs for each key : by default, a new effect
+ *            cancels the previous one with the same key (latest wins).
+ * @param conflate If true, a new effect is dropped instead if an effect with the same key is
+ *                 still pending or running. This is useful for refresh requests.
+ */
+class Effect(
+        val events: Flow<Event>,
+        val key: Any? = null,
+        val conflate: Boolean = false
+)
+
+/**
+ * A runtime that executes the [Effect]s of the event loop with a bounded concurrency, and feeds
+ * the resulting [Event]s back into a bounded buffer.
+ *
+ * @param scope The [CoroutineScope] in which the effects are executed.
+ * @param concurrency The maximum number of effects running at the same time.
+ * @param capacity The capacity of the buffer of produced [Event]s.
+ */
+@ExperimentalCoroutinesApi
+class EffectRuntime(
+        private val scope: CoroutineScope,
+        concurrency: Int = EFFECT_CONCURRENCY,
+        capacity: Int = EFFECT_BUFFER_CAPACITY
+) {
+
+    private val semaphore = Semaphore(concurrency)
+    private val output = Channel<Event>(capacity)
+    private val jobs = mutableMapOf<Any, Job>()
+
+    private val pendingCount = AtomicInteger()
+    private val runningCount = AtomicInteger()
+    private val pendingState = MutableStateFlow(0)
+    private val runningState = MutableStateFlow(0)
+
+    /**
+     * The [Event]s produced by the effects. This [Flow] may only be collected once.
+     */
+    val events: Flow<Event> = output.consumeAsFlow()
+
+    /**
+     * The number of effects waiting for a free slot, for metrics.
+     */
+    val pending: StateFlow<Int>
+        get() = pendingState
+
+    /**
+     * The number of effects currently running, for metrics.
+     */
+    val running: StateFlow<Int>
+        get() = runningState
+
+    /**
+     * Schedules the execution of an [Effect], according to its key.
+     */
+    fun execute(effect: Effect) {
+        val key = effect.key
+        synchronized(jobs) {
+            val previous = key?.let { jobs[it] }
+            if (previous != null && previous.isActive) {
+                if (effect.conflate) return
+                previous.cancel()
+            }
+
+            pendingState.value = pendingCount.incrementAndGet()
+            val job = scope.launch(start = CoroutineStart.LAZY) {
+                var started = false
+                try {
+                    semaphore.withPermit {
+                        started = true
+                        pendingState.value = pendingCount.decrementAndGet()
+                        runningState.value = runningCount.incrementAndGet()
+                        effect.events.collect { output.send(it) }
+                    }
+                } finally {
+                    if (started) {
+                        runningState.value = runningCount.decrementAndGet()
+                    } else {
+                        pendingState.value = pendingCount.decrementAndGet()
+                    }
+                    if (key != null) {
+                        synchronized(jobs) {
+                            if (jobs[key] === coroutineContext[Job]) jobs.remove(key)
+                        }
+                    }
+                }
+            }
+            if (key != null) jobs[key] = job
+            job.start()
+        }
+    }
+}
@@ -3,11 +3,14 @@ package ch.heigvd.pro.b04.android.question
 import ch.heigvd.pro.b04.android.datamodel.Answer
 import ch.heigvd.pro.b04.android.datamodel.Poll
 import ch.heigvd.pro.b04.android.datamodel.Question
-import ch.heigvd.pro.b04.android.network.RockinAPI
+import ch.heigvd.pro.b04.android.network.NetworkError
+import ch.heigvd.pro.b04.android.network.PollRepository
+import ch.heigvd.pro.b04.android.network.PollSource
+import ch.heigvd.pro.b04.android.network.VoteResult
+import kotlinx.collections.immutable.*
 import kotlinx.coroutines.*
-import kotlinx.coroutines.channels.BroadcastChannel
-import kotlinx.coroutines.channels.Channel
 import kotlinx.coroutines.flow.*
+import java.util.concurrent.Executors
 
 /**
  * How long the user's vote is considered as more relevant than the server value.
@@ -15,40 +18,88 @@ import kotlinx.coroutines.flow.*
 const val GRACE_DELAY_IN_MILLIS = 7500L
 
 /**
- * The general refresh frequency. The smaller the delay, the more real-time-ish the app.
+ * The single-threaded [CoroutineDispatcher] on which the event loops of all the [PollState]s are
+ * confined. The reducer and the derived [Flow]s never run on the main thread, and since there is a
+ * single thread, the [Model] is never updated concurrently.
  */
-const val FRESH_DELAY_IN_MILLIS = 1000L
+val PollStateDispatcher: CoroutineDispatcher = Executors
+        .newSingleThreadExecutor { runnable -> Thread(runnable, "PollState").apply { isDaemon = true } }
+        .asCoroutineDispatcher()
 
 /**
- * A type alias for a type which has a sequence of states with an identifier different for two
- * strictly consecutive sequence items.
- */
-typealias Sequenced<T> = Pair<T, Int>
-
-/**
- * A data class representing the [Model] of the currently displayed poll. The [map] values will
- * contain a best-effort guess of what the server state is, and takes into consideration the user
- * for the last [GRACE_DELAY_IN_MILLIS].
+ * An immutable data class representing the [Model] of the currently displayed poll. The questions
+ * are indexed by their identifier, and the answers by the identifier of their question, then by
+ * their own identifier, so that edits of a question never make its answers unreachable.
+ *
+ * All the collections are persistent : an updated [Model] shares all of its unchanged parts with
+ * the previous one. Models are compared by identity, since the reducer returns the very same
+ * instance when an [Event] does not change anything.
+ *
+ * The [answers] values will contain a best-effort guess of what the server state is, and take into
+ * consideration the user for the last [GRACE_DELAY_IN_MILLIS].
+ *
+ * @param rejected The number of votes that have been rejected so far on the current question.
  */
 data class Model(
         val poll: Poll,
-        var current: Question,
+        val current: Question,
         val token: String,
-        var map: MutableMap<Question, List<FetchedAnswer>>,
-        var rejected: Sequenced<Unit?>,
-        var invalidToken: Boolean
-)
+        val questions: PersistentMap<Long, Question>,
+        val order: PersistentList<Question>,
+        val answers: PersistentMap<Long, PersistentMap<Long, FetchedAnswer>>,
+        val rejected: Int,
+        val invalidToken: Boolean
+) {
+
+    /**
+     * The answers of the current question, in the order they were received from the server.
+     */
+    val currentAnswers: Collection<FetchedAnswer>
+        get() = answers[current.idQuestion]?.values ?: emptyList<FetchedAnswer>()
+
+    /**
+     * The question that comes after the current one in [order], if any.
+     */
+    val next: Question?
+        get() {
+            val position = order.binarySearch(current, Question.ORDER)
+            return order.getOrNull(if (position >= 0) position + 1 else -(position + 1))
+        }
+
+    /**
+     * The question that comes before the current one in [order], if any.
+     */
+    val previous: Question?
+        get() {
+            val position = order.binarySearch(current, Question.ORDER)
+            return order.getOrNull(if (position >= 0) position - 1 else -(position + 1) - 1)
+        }
+
+    override fun equals(other: Any?): Boolean = this === other
+
+    override fun hashCode(): Int = System.identityHashCode(this)
+}
 
 /**
  * A data class representing an [Answer], as well as a freshness stamp indicating when it was
- * fetched from the server.
+ * fetched from the server, or when the user last voted for it.
  *
  * @see GRACE_DELAY_IN_MILLIS
  */
 data class FetchedAnswer(
-        var timestamp: Long,
-        var answer: Answer
-)
+        val timestamp: Long,
+        val answer: Answer
+) {
+
+    /**
+     * Returns true if this answer has the same content as the [other] one. Unlike
+     * [Answer.equals], the identifier and the checked state are taken into account.
+     */
+    fun sameAs(other: FetchedAnswer): Boolean =
+            answer == other.answer
+                    && answer.idAnswer == other.answer.idAnswer
+                    && answer.isChecked == other.answer.isChecked
+}
 
 /**
  * A sealed class representing all the different events that might be triggered by the model. These
@@ -68,6 +119,9 @@ sealed class Event {
     object GotInvalidToken : Event()
     class GotQuestions(val questions: List<Question>) : Event()
     class GotAnswers(val question: Question, val answers: List<FetchedAnswer>) : Event()
+    class VoteAcknowledged(val answer: Answer) : Event()
+    class VoteQueued(val answer: Answer) : Event()
+    class VoteFailed(val answer: Answer) : Event()
 
     // Refresh events.
     object RefreshQuestions : Event()
@@ -81,6 +135,8 @@ sealed class Event {
  * notified of Model changes to render the right data.
  *
  * @param scope A [CoroutineScope] to execute some flows in.
+ * @param repository The [PollSource] that provides the questions and answers, usually the shared
+ *                   [PollRepository].
  * @param poll The [Poll] to display.
  * @param question The selected [Question] at start.
  * @param token The user token.
@@ -88,12 +144,16 @@ sealed class Event {
  * @param moveToNext A [Flow] that emits when the user clicks the next button.
  * @param moveToPrevious A [Flow] that emits when the user clicks the previous button.
  * @param votes A [Flow] that emits when the user votes for an answer.
+ *
+ * @param dispatcher The [CoroutineDispatcher] on which the event loop and the derived [Flow]s run.
+ *                   Only the final values are delivered to the collectors, on their own dispatcher.
  */
 @FlowPreview
 @ExperimentalCoroutinesApi
 class PollState(
         // Scope
         scope: CoroutineScope,
+        private val repository: PollSource,
 
         // Data.
         poll: Poll,
@@ -103,53 +163,82 @@ class PollState(
         // User actions.
         moveToNext: Flow<Unit>,
         moveToPrevious: Flow<Unit>,
-        votes: Flow<Answer>
+        votes: Flow<Answer>,
+
+        // Threading.
+        private val dispatcher: CoroutineDispatcher = PollStateDispatcher
 ) {
 
     /**
-     * A [BroadcastChannel] that consists of a buffer of all the [Event]s that have not been
-     * processed by the main loop yet.
+     * The [CoroutineScope] of the event loop, confined to the [dispatcher].
+     */
+    private val loop = scope + dispatcher
+
+    /**
+     * The [EffectRuntime] that executes the effects of the main loop, and buffers the [Event]s
+     * they produce until they are processed.
      */
-    private val buffer = BroadcastChannel<Event>(Channel.Factory.BUFFERED)
+    private val effects = EffectRuntime(loop)
 
     /**
      * A [MutableStateFlow] that acts as a single source of truth for all the [Flow]s that are
-     * exposed outside of the [PollState]. A [Sequenced] [Model] is required, since the instance
-     * does not change otherwise.
+     * exposed outside of the [PollState]. Since [Model] instances are compared by identity, an
+     * [Event] that does not change the [Model] is never emitted.
      *
      * Using a [MutableStateFlow] avoids duplicate [Flow]s, since [Flow]s are cold by default.
      */
-    private val innerState: MutableStateFlow<Sequenced<Model>> = MutableStateFlow(Pair(Model(
+    private val innerState: MutableStateFlow<Model> = MutableStateFlow(Model(
             poll,
             question,
             token,
-            mutableMapOf<Question, List<FetchedAnswer>>(),
-            Pair(null, 0),
+            persistentMapOf(),
+            persistentListOf(),
+            persistentMapOf(),
+            0,
             false
-    ), 0))
-
-    /**
-     * The model that is exposed to the outside world directly. This might be hidden in the future,
-     * to avoid unwanted mutable state modifications.
-     */
-    @Deprecated(level = DeprecationLevel.WARNING, message = "Please do not work with the internal mutable state directly")
-    val data = innerState.map { it.first }
+    ))
 
     /**
      * A [Flow] of all the [Event]s that need to be processed by the pipeline.
      */
     private val events = merge(
-            buffer.asFlow(),
-            reloadAllQuestionsPeriodically(),
-            reloadAnswersPeriodically(),
+            effects.events,
+            repository.questions.map { Event.GotQuestions(it) },
+            repository.networkErrors
+                    .filter { it == NetworkError.TokenNotValid }
+                    .map { Event.GotInvalidToken },
+            fetchCurrentAnswers(),
+            repository.voteResults.map { result ->
+                when (result) {
+                    is VoteResult.Acknowledged -> Event.VoteAcknowledged(result.answer)
+                    is VoteResult.Queued -> Event.VoteQueued(result.answer)
+                    is VoteResult.Failed -> Event.VoteFailed(result.answer)
+                }
+            },
             markAnswerChecked(votes),
             moveToNext.map { Event.MoveToNext },
             moveToPrevious.map { Event.MoveToPrevious }
     )
 
+    /**
+     * A [Flow] of the currently displayed [Question].
+     */
+    val currentQuestion: Flow<Question> =
+            innerState.map { it.current }
+                    .distinctUntilChanged { old, new -> old === new }
+                    .flowOn(dispatcher)
+
+    /**
+     * A [Flow] of the [Answer]s of the currently displayed [Question].
+     */
+    val currentAnswers: Flow<List<Answer>> =
+            innerState.map { it.answers[it.current.idQuestion] }
+                    .distinctUntilChanged { old, new -> old === new }
+                    .map { answers -> answers?.values?.map { it.answer } ?: emptyList() }
+                    .flowOn(dispatcher)
+
     val minCheckedAnswers: Flow<Int?> =
-            innerState.map { it.first }
-                    .map { it.current.answerMin to (it.map[it.current] ?: emptyList()) }
+            innerState.map { it.current.answerMin to it.currentAnswers }
                     .map { (required, answers) ->
                         val actual = answers.count { it.answer.isChecked }
                         if (actual == 0 || actual >= required) {
@@ -158,189 +247,279 @@ class PollState(
                             return@map required
                         }
                     }
+                    .distinctUntilChanged()
+                    .flowOn(dispatcher)
 
     /**
      * A [Flow] that triggers messages whenever a vote is rejected.
      */
     val tooManyAnswers: Flow<Int> =
-            innerState.map { it.first }
-                    .map { it.current.answerMax to it.rejected }
-                    .filter { it.second.first != null }
-                    .distinctUntilChanged()
-                    .map { it.first }
+            innerState.map { it.rejected to it.current.answerMax }
+                    .distinctUntilChangedBy { it.first }
+                    .filter { it.first > 0 }
+                    .map { it.second }
+                    .flowOn(dispatcher)
 
     /**
      * A [Flow] with a boolean value indicating if the previous button should be displayed.
      */
     val previousButtonVisible: Flow<Boolean> =
-            innerState.map { it.first }
-                    .map { s -> s.map.keys.any { q -> q.indexInPoll < s.current.indexInPoll } }
+            innerState.map { it.previous != null }
+                    .distinctUntilChanged()
+                    .flowOn(dispatcher)
 
     /**
      * A [Flow] with a boolean value indicating if the next button should be displayed.
      */
     val nextButtonVisible: Flow<Boolean> =
-            innerState.map { it.first }
-                    .map { s -> s.map.keys.any { q -> q.indexInPoll > s.current.indexInPoll } }
+            innerState.map { it.next != null }
+                    .distinctUntilChanged()
+                    .flowOn(dispatcher)
+
+    /**
+     * The number of effects waiting to be executed, for metrics.
+     */
+    val pendingEffects: StateFlow<Int>
+        get() = effects.pending
+
+    /**
+     * The number of effects currently running, for metrics.
+     */
+    val runningEffects: StateFlow<Int>
+        get() = effects.running
 
     init {
-        scope.launch {
+        loop.launch {
             events.collect { event ->
-                val (current, number) = innerState.value
-                val (next, actions) = transform(current, event)
-                scope.launch { actions.collect { event -> buffer.send(event) } }
-                innerState.value = next to (number + 1)
+                val (next, effect) = transform(repository, innerState.value, event)
+                effect?.let { effects.execute(it) }
+                innerState.value = next
             }
         }
     }
+
+    /**
+     * A [Flow] of the answers of the currently displayed question. Whenever the user moves to
+     * another question, the answers of the previous one are not observed anymore.
+     */
+    private fun fetchCurrentAnswers(): Flow<Event> =
+            innerState.map { it.current }
+                    .distinctUntilChangedBy { it.idQuestion }
+                    .flatMapLatest { question ->
+                        repository.answers(question).map { answers ->
+                            val now = System.currentTimeMillis()
+                            Event.GotAnswers(question, answers.map { FetchedAnswer(now, it) })
+                        }
+                    }
 }
 
 /**
  * Following the Elm Architecture design, a [Model] is updated with an [Event], and results in a
- * tuple of a [Model] with updated content, and a [Flow] of [Event] that might be triggered later.
+ * tuple of a [Model] with updated content, and an optional [Effect] that might trigger some
+ * [Event]s later. If the [Event] does not change anything, the very same [Model] instance is
+ * returned.
  *
+ * @param repository The [PollSource] that refresh requests and votes are sent to.
  * @param data The current state.
  * @param event The processed event.
  *
- * @return A [Pair] of a [Model] and a [Flow] of [Event].
+ * @return A [Pair] of a [Model] and an [Effect].
  */
-private suspend fun transform(data: Model, event: Event): Pair<Model, Flow<Event>> {
+internal fun transform(
+        repository: PollSource,
+        data: Model,
+        event: Event
+): Pair<Model, Effect?> {
     return when (event) {
-        is Event.NoOp -> data to emptyFlow()
+        is Event.NoOp -> data to null
         // We got an invalid token. This means we have been disconnected from the poll.
         is Event.GotInvalidToken -> {
-            data.copy(invalidToken = true) to emptyFlow()
+            if (data.invalidToken) data to null
+            else data.copy(invalidToken = true) to null
         }
-        // Increment the sequence number of rejected votes (needed for consecutive events)
+        // Increment the number of rejected votes (needed for consecutive events)
         is Event.RejectVote -> {
-            val nextRejection = data.rejected.copy(first = Unit, second = data.rejected.second + 1)
-            data.copy(rejected = nextRejection) to emptyFlow()
+            data.copy(rejected = data.rejected + 1) to null
         }
-        // Get the current question, and move to the next one (based on index)
+        // Get the current question, and move to the next one (based on index). The rejected votes
+        // of the previous question are forgotten
         is Event.MoveToNext -> {
-            val nextCurrent = data.map.keys
-                    .filter { it.indexInPoll > data.current.indexInPoll }
-                    .minBy { it.indexInPoll }
-                    ?: data.current
-            data.copy(current = nextCurrent, rejected = Pair(null, 0)) to flowOf(Event.RefreshCurrentAnswers)
+            val nextCurrent = data.next ?: return data to null
+            data.copy(current = nextCurrent, rejected = 0) to refresh(repository)
         }
-        // Get the current question, and move to the previous one (based on index)
+        // Get the current question, and move to the previous one (based on index). The rejected
+        // votes of the previous question are forgotten
         is Event.MoveToPrevious -> {
-            val nextCurrent = data.map.keys
-                    .filter { it.indexInPoll < data.current.indexInPoll }
-                    .maxBy { it.indexInPoll }
-                    ?: data.current
-            data.copy(current = nextCurrent, rejected = Pair(null, 0)) to flowOf(Event.RefreshCurrentAnswers)
+            val nextCurrent = data.previous ?: return data to null
+            data.copy(current = nextCurrent, rejected = 0) to refresh(repository)
         }
-        // Vote for a certain answer, persist the state locally, then inform the server. Reset the
-        // grace period
+        // Vote for a certain answer, persist the state locally, then queue the vote in the outbox.
+        // Reset the grace period
         is Event.SetVote -> {
-            val fetched = data.map[data.current]?.first { it.answer.idAnswer == event.answer.idAnswer }
-            val positive = data.map[data.current]?.count { it.answer.isChecked } ?: 0
-            val votingFalse = (fetched?.answer?.isChecked ?: false)
+            val answers = data.answers[data.current.idQuestion]
+            val fetched = answers?.get(event.answer.idAnswer) ?: return data to null
+            val positive = answers.values.count { it.answer.isChecked }
+            val votingFalse = fetched.answer.isChecked
             // We can perform the change if the answers max is not set, we're toggling off an answer
             // or we have enough margin for the next positive vote
             if (data.current.answerMax == 0 || votingFalse || positive + 1 <= data.current.answerMax) {
-                fetched?.answer?.toggle()
-                fetched?.timestamp = System.currentTimeMillis()
-                val effect = flow {
-                    emit(fetched?.answer?.let {
-                        RockinAPI.voteForAnswerSuspending(it, data.token)
-                    })
-                }.map { Event.NoOp }.catch { emit(Event.NoOp) }
-
-                data to effect
+                val voted = FetchedAnswer(System.currentTimeMillis(), fetched.answer.toggled())
+                val updated = answers.put(voted.answer.idAnswer, voted)
+                val effect = flow<Event> { repository.submit(voted.answer) }
+
+                data.copy(answers = data.answers.put(data.current.idQuestion, updated)) to Effect(effect)
             } else {
-                data to flow { emit(Event.RejectVote) }
+                data to Effect(flowOf(Event.RejectVote))
             }
         }
-        // Update the list of displayed questions
+        // The server accepted a vote. Its response confirms the state of the answer, just like a
+        // fetched one : if the answer was not toggled again since, use it right away, and restart
+        // its grace period, so that older server values do not overwrite it
+        is Event.VoteAcknowledged -> {
+            val answers = data.answers[event.answer.idQuestion]
+            val local = answers?.get(event.answer.idAnswer) ?: return data to null
+            if (local.answer.isChecked != event.answer.isChecked) {
+                return data to null
+            }
+            val acknowledged = FetchedAnswer(System.currentTimeMillis(), event.answer)
+            data.copy(answers = data.answers.put(
+                    event.answer.idQuestion,
+                    answers.put(event.answer.idAnswer, acknowledged)
+            )) to null
+        }
+        // A vote will be delivered later. If the answer was not toggled again since, keep the local
+        // state until the vote gets acknowledged, regardless of the server values
+        is Event.VoteQueued -> {
+            val answers = data.answers[event.answer.idQuestion]
+            val local = answers?.get(event.answer.idAnswer) ?: return data to null
+            if (local.answer.isChecked != event.answer.isChecked) {
+                return data to null
+            }
+            val queued = FetchedAnswer(Long.MAX_VALUE, local.answer)
+            data.copy(answers = data.answers.put(
+                    event.answer.idQuestion,
+                    answers.put(event.answer.idAnswer, queued)
+            )) to null
+        }
+        // A vote was rejected by the server. If the answer was not toggled again since, give up on the
+        // local state, so that the next server values are used, and ask for them right away
+        is Event.VoteFailed -> {
+            val answers = data.answers[event.answer.idQuestion]
+            val local = answers?.get(event.answer.idAnswer) ?: return data to null
+            if (local.answer.isChecked != event.answer.isChecked) {
+                return data to null
+            }
+            val reverted = FetchedAnswer(0, local.answer.toggled())
+            data.copy(answers = data.answers.put(
+                    event.answer.idQuestion,
+                    answers.put(event.answer.idAnswer, reverted)
+            )) to refresh(repository)
+        }
+        // Update the list of displayed questions, and forget the answers of removed questions
         is Event.GotQuestions -> {
-            val updated = mutableMapOf<Question, List<FetchedAnswer>>()
-            for ((question, values) in data.map) {
-                val update = event.questions.firstOrNull { it.idQuestion == question.idQuestion }
-                if (update != null) {
-                    updated[update] = values
+            val builder = data.questions.builder()
+            val ids = HashSet<Long>(event.questions.size)
+            val changes = HashMap<Long, Question?>()
+            for (question in event.questions) {
+                ids.add(question.idQuestion)
+                val previous = data.questions[question.idQuestion]
+                if (previous == null || previous != question || previous.indexInPoll != question.indexInPoll) {
+                    builder[question.idQuestion] = question
+                    changes[question.idQuestion] = question
                 }
             }
-            for (question in event.questions) {
-                if (!updated.keys.any { it.idQuestion == question.idQuestion })
-                    updated[question] = emptyList()
+            for (id in data.questions.keys) {
+                if (id !in ids) {
+                    builder.remove(id)
+                    changes[id] = null
+                }
+            }
+            if (changes.isEmpty()) {
+                return data to null
             }
-            data.map = updated
-            // Update the current question, if it exists.
-            data.current = event.questions
-                    .firstOrNull { it.idQuestion == data.current.idQuestion }
-                    ?: data.current
-            data to emptyFlow()
+
+            val updated = builder.build()
+            data.copy(
+                    questions = updated,
+                    order = updateOrder(data.order, data.questions, changes),
+                    answers = data.answers.mutate { it.keys.retainAll(ids) },
+                    // Update the current question, if it exists.
+                    current = updated[data.current.idQuestion] ?: data.current
+            ) to null
         }
         // Update the list of displayed answers
         is Event.GotAnswers -> {
-            val answers = data.map[event.question] ?: emptyList()
-            val updated = mutableListOf<FetchedAnswer>()
-            for (local in answers) {
-                val remote = event.answers.firstOrNull { it.answer.idAnswer == local.answer.idAnswer }
-                if (remote != null && remote.timestamp - GRACE_DELAY_IN_MILLIS >= local.timestamp) {
-                    updated.add(remote)
-                } else if (remote != null) {
-                    // If the question exits and the grace period is not expired, use the local
-                    // question.
-                    updated.add(local)
-                }
+            val answers = data.answers[event.question.idQuestion]
+            // Most refreshes do not change anything, so the answers are only rebuilt if needed.
+            val unchanged = answers != null && answers.size == event.answers.size && event.answers.all { remote ->
+                val local = answers[remote.answer.idAnswer]
+                local != null && keepsLocal(local, remote)
             }
-            for (update in event.answers) {
-                if (!updated.any { it.answer.idAnswer == update.answer.idAnswer }) {
-                    updated.add(update)
-                }
+            if (unchanged) {
+                return data to null
             }
-            data.map[event.question] = updated
-            data to emptyFlow()
-        }
-        // Ask the runtime to refresh the list of all the questions
-        is Event.RefreshQuestions -> {
-            val events =
-                    flow { emit(RockinAPI.getQuestionsSuspending(data.poll, data.token)) }
-                            .map {
-                                val response = it.body()
-                                when {
-                                    response != null -> Event.GotQuestions(response)
-                                    it.code() == 403 -> Event.GotInvalidToken
-                                    else -> Event.GotQuestions(emptyList())
-                                }
-                            }
-                            .catch { /* Ignore. */ }
-
-            data to events
+            val builder = persistentMapOf<Long, FetchedAnswer>().builder()
+            for (remote in event.answers) {
+                val local = answers?.get(remote.answer.idAnswer)
+                builder[remote.answer.idAnswer] = if (local != null && keepsLocal(local, remote)) local else remote
+            }
+            data.copy(answers = data.answers.put(event.question.idQuestion, builder.build())) to null
         }
-        // Ask the runtime to refresh the list of the answers for the current question
-        is Event.RefreshCurrentAnswers -> {
-            val now = System.currentTimeMillis()
-            val events = flow {
-                emit(RockinAPI.getAnswersSuspending(data.current, data.token))
-            }.map {
-                val response = it.body()
-                when {
-                    response != null -> Event.GotAnswers(
-                            data.current,
-                            response.map { answer -> FetchedAnswer(now, answer) })
-                    it.code() == 403 -> Event.GotInvalidToken
-                    else -> Event.GotQuestions(emptyList())
-                }
-            }.catch { /* Ignore */ }
-
-            data to events
+        // Ask the repository to refresh the list of all the questions, or the answers of the
+        // current question. Both are fetched by the same polling pipeline.
+        is Event.RefreshQuestions, is Event.RefreshCurrentAnswers -> {
+            data to refresh(repository)
         }
     }
 }
 
 /**
- * A [Flow] that emits regularly to get a list of all the questions.
+ * Returns true if the [local] answer should be used rather than the [remote] one : if it did not
+ * change, or if its grace period is not expired.
+ */
+private fun keepsLocal(local: FetchedAnswer, remote: FetchedAnswer): Boolean =
+        local.sameAs(remote) || remote.timestamp - GRACE_DELAY_IN_MILLIS < local.timestamp
+
+/**
+ * The key of the refresh [Effect]s. Refresh requests are conflated, since a single pending one
+ * is enough.
+ */
+private object RefreshKey
+
+/**
+ * Returns an [Effect] that asks the [PollSource] to refresh its data as soon as possible.
  */
-fun reloadAllQuestionsPeriodically() = flow<Event> {
-    do {
-        emit(Event.RefreshQuestions)
-        delay(FRESH_DELAY_IN_MILLIS)
-    } while (true)
+private fun refresh(repository: PollSource): Effect =
+        Effect(flow { repository.refresh() }, RefreshKey, conflate = true)
+
+/**
+ * Incrementally updates a list of questions sorted with [Question.ORDER]. Only the questions that
+ * were added, removed or modified are touched, and each of them is located by binary search.
+ *
+ * @param order The sorted list of the [old] questions.
+ * @param old The previous questions, indexed by identifier.
+ * @param changes The added and modified questions, indexed by identifier, with null values for the
+ *                removed ones.
+ *
+ * @return The sorted list of the updated questions.
+ */
+internal fun updateOrder(
+        order: PersistentList<Question>,
+        old: Map<Long, Question>,
+        changes: Map<Long, Question?>
+): PersistentList<Question> = order.mutate { list ->
+    for ((id, update) in changes) {
+        val previous = old[id] ?: continue
+        if (update == null || update.indexInPoll != previous.indexInPoll) {
+            val position = list.binarySearch(previous, Question.ORDER)
+            if (position >= 0) list.removeAt(position)
+        }
+    }
+    for (update in changes.values) {
+        if (update == null) continue
+        val position = list.binarySearch(update, Question.ORDER)
+        if (position >= 0) list[position] = update else list.add(-(position + 1), update)
+    }
 }
 
 /**
@@ -350,14 +529,3 @@ fun reloadAllQuestionsPeriodically() = flow<Event> {
 fun markAnswerChecked(state: Flow<Answer>): Flow<Event> {
     return state.map { answer -> Event.SetVote(answer) }
 }
-
-/**
- * A [Flow] that emits regularly to refresh the currently displayed question.
- */
-@ExperimentalCoroutinesApi
-fun reloadAnswersPeriodically() = flow<Event> {
-    do {
-        emit(Event.RefreshCurrentAnswers)
-        delay(FRESH_DELAY_IN_MILLIS)
-    } while (true)
-}
\ No newline at end of file
@@ -37,7 +37,7 @@ class QuestionActivity : AppCompatActivity() {
         // Setup list of answers
         val answerList = findViewById<RecyclerView>(R.id.question_answers_view)
         val manager = LinearLayoutManager(this)
-        val questionAdapter = QuestionAdapter(state, this)
+        val questionAdapter = QuestionAdapter(this, state::selectAnswer)
 
         answerList.itemAnimator = DefaultItemAnimator()
         answerList.adapter = questionAdapter
@@ -53,6 +53,15 @@ class QuestionActivity : AppCompatActivity() {
         backButton.setOnClickListener { finish() }
         nextButton.setOnClickListener { goNext() }
 
+        // Feed the list with the latest snapshots, as long as the activity is alive
+        lifecycleScope.launchWhenStarted {
+            state.currentQuestion.collect { questionAdapter.submitTitle(it.title) }
+        }
+
+        lifecycleScope.launchWhenStarted {
+            state.answers.collect { questionAdapter.submitAnswers(it) }
+        }
+
         // React to change in state
         lifecycleScope.launchWhenStarted {
             state.networkErrors().collect {
@@ -110,7 +119,7 @@ class QuestionActivity : AppCompatActivity() {
     }
 
     private fun disconnect() {
-        val tokenLiveData = AuthenticationTokenLiveData(applicationContext)
+        val tokenLiveData = AuthenticationTokenLiveData.getInstance()
         tokenLiveData.logout()
         finish()
     }
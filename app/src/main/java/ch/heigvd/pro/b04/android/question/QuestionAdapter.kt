@@ -2,31 +2,57 @@ package ch.heigvd.pro.b04.android.question
 
 import android.content.Context
 import android.graphics.Color
-import android.text.SpannableString
-import android.text.style.ForegroundColorSpan
 import android.view.LayoutInflater
 import android.view.ViewGroup
 import android.widget.Button
 import android.widget.TextView
-import androidx.core.content.ContextCompat
-import androidx.lifecycle.viewModelScope
+import androidx.recyclerview.widget.AsyncDifferConfig
+import androidx.recyclerview.widget.AsyncListDiffer
+import androidx.recyclerview.widget.DiffUtil
 import androidx.recyclerview.widget.RecyclerView
 import ch.heigvd.pro.b04.android.R
 import ch.heigvd.pro.b04.android.datamodel.Answer
-import kotlinx.coroutines.flow.collect
-import kotlinx.coroutines.launch
-import java.util.*
-
+import ch.heigvd.pro.b04.android.utils.OffsetListUpdateCallback
+import ch.heigvd.pro.b04.android.utils.RowText
+import ch.heigvd.pro.b04.android.utils.RowTextCache
+import kotlinx.coroutines.suspendCancellableCoroutine
+import kotlin.coroutines.resume
+
+/**
+ * The adapter of the answers of a question. It does not observe the [QuestionViewModel] by
+ * itself : the owner of the list feeds it with immutable snapshots through [submitTitle] and
+ * [submitAnswers], from a collector bound to its own lifecycle.
+ *
+ * @param onAnswerSelected Called when the participant clicks on an answer.
+ */
 class QuestionAdapter(
-        private val state: QuestionViewModel,
-        private val context: Context
+        private val context: Context,
+        private val onAnswerSelected: (Answer) -> Unit
 ) : RecyclerView.Adapter<RecyclerView.ViewHolder>() {
 
-    private var answers: List<Answer> = LinkedList()
+    /**
+     * The displayed answers are diffed on a background thread, and only the rows that actually
+     * changed are rebound. When only the checked state of an answer changes, its row is just
+     * recoloured.
+     */
+    private val differ = AsyncListDiffer<Answer>(
+            OffsetListUpdateCallback(this, HEADER_COUNT),
+            AsyncDifferConfig.Builder(ANSWER_DIFF).build()
+    )
+
+    private val answers: List<Answer>
+        get() = differ.currentList
+
+    private val texts = RowTextCache(context).apply {
+        // The first rows are prefetched before any of them is created.
+        attachPrototype(context, R.layout.question_answers, R.id.question_answer_item)
+    }
+    private val selectedColor = context.getColor(R.color.colorSelected)
+
     private var title: String = ""
 
     override fun getItemId(position: Int): Long {
-        return if (position == 0) HEADER_ID else answers[position - 1].idAnswer
+        return if (position == 0) HEADER_ID else answers[position - HEADER_COUNT].idAnswer
     }
 
     private class HeaderViewHolder(parent: ViewGroup)
@@ -40,43 +66,28 @@ class QuestionAdapter(
         }
     }
 
-    private inner class AnswerViewHolder(private val parent: ViewGroup)
+    private inner class AnswerViewHolder(parent: ViewGroup)
         : RecyclerView.ViewHolder(LayoutInflater.from(parent.context)
             .inflate(R.layout.question_answers, parent, false)) {
 
         private val answerButton: Button = itemView.findViewById(R.id.question_answer_item)
 
+        init {
+            texts.attach(answerButton)
+        }
+
         fun bindAnswer(answer: Answer) {
-            var text = answer.title
-
-            if (answer.description != null && answer.description != "") {
-                text += "\n" + answer.description
-            }
-
-            val spannable = SpannableString(text)
-            spannable.setSpan(ForegroundColorSpan(Color.BLACK), 0, answer.title.length, 0 )
-
-            if (answer.description != null && answer.description != "") {
-                spannable.setSpan(
-                    ForegroundColorSpan(
-                        ContextCompat.getColor(parent.context, R.color.colorDescription)),
-                    answer.title.length + 1,
-                    text.length,
-                    0
-                )
-            }
-
-            answerButton.text = spannable
-            updateButtonColor(answer)
+            texts.bind(answerButton, answer.toRowText())
+            bindChecked(answer)
+        }
 
-            answerButton.setOnClickListener {
-                state.selectAnswer(answer)
-                updateButtonColor(answer)
-            }
+        fun bindChecked(answer: Answer) {
+            updateButtonColor(answer)
+            answerButton.setOnClickListener { onAnswerSelected(answer) }
         }
 
         private fun updateButtonColor(answer: Answer) {
-            val color = if (answer.isChecked) context.getColor(R.color.colorSelected) else Color.WHITE
+            val color = if (answer.isChecked) selectedColor else Color.WHITE
             answerButton.setBackgroundColor(color)
         }
 
@@ -90,17 +101,29 @@ class QuestionAdapter(
         }
     }
 
+    override fun onBindViewHolder(
+            holder: RecyclerView.ViewHolder,
+            position: Int,
+            payloads: MutableList<Any>
+    ) {
+        if (position != 0 && payloads.isNotEmpty() && payloads.all { it == PAYLOAD_CHECKED }) {
+            (holder as AnswerViewHolder).bindChecked(answers[position - HEADER_COUNT])
+        } else {
+            onBindViewHolder(holder, position)
+        }
+    }
+
     override fun onBindViewHolder(holder: RecyclerView.ViewHolder, position: Int) {
         if (position == 0) {
             (holder as HeaderViewHolder).bindTitle(title)
         }
         if (position != 0) {
-            (holder as AnswerViewHolder).bindAnswer(answers[position - 1])
+            (holder as AnswerViewHolder).bindAnswer(answers[position - HEADER_COUNT])
         }
     }
 
     override fun getItemCount(): Int {
-        return answers.size + 1
+        return answers.size + HEADER_COUNT
     }
 
     override fun getItemViewType(position: Int): Int {
@@ -111,21 +134,53 @@ class QuestionAdapter(
         private const val VIEW_TYPE_HEADER = 0
         private const val VIEW_TYPE_ANSWER = 1
         private const val HEADER_ID: Long = -1
+        private const val HEADER_COUNT = 1
+
+        /**
+         * The payload of a change that only affects the checked state of an answer.
+         */
+        private val PAYLOAD_CHECKED = Any()
+
+        /**
+         * Answers are identified by their identifier. Since [Answer.equals] ignores the identifier
+         * and the checked state, they are compared separately.
+         */
+        private val ANSWER_DIFF = object : DiffUtil.ItemCallback<Answer>() {
+            override fun areItemsTheSame(oldItem: Answer, newItem: Answer): Boolean =
+                    oldItem.idAnswer == newItem.idAnswer
+
+            override fun areContentsTheSame(oldItem: Answer, newItem: Answer): Boolean =
+                    oldItem == newItem && oldItem.isChecked == newItem.isChecked
+
+            override fun getChangePayload(oldItem: Answer, newItem: Answer): Any? =
+                    if (oldItem == newItem) PAYLOAD_CHECKED else null
+        }
     }
 
-    init {
-        setHasStableIds(true)
-        state.viewModelScope.launch {
-            state.answers.collect {
-                this@QuestionAdapter.answers = it
-                notifyDataSetChanged()
-            }
+    /**
+     * Displays the title of the question in the header row.
+     */
+    fun submitTitle(text: String) {
+        if (title != text) {
+            title = text
+            notifyItemChanged(0)
         }
-        state.viewModelScope.launch {
-            state.currentQuestion.collect {
-                this@QuestionAdapter.title = it.title
-                notifyItemChanged(0)
-            }
+    }
+
+    /**
+     * Displays a new list of answers. Their texts are prepared before the list is diffed, and this
+     * returns once the list is displayed, so a collector never diffs a list that is already stale.
+     */
+    suspend fun submitAnswers(answers: List<Answer>) {
+        texts.prefetch(answers.map { it.toRowText() })
+        suspendCancellableCoroutine<Unit> { continuation ->
+            differ.submitList(answers) { continuation.resume(Unit) }
         }
     }
-}
\ No newline at end of file
+
+    init {
+        setHasStableIds(true)
+    }
+}
+
+private fun Answer.toRowText(): RowText = RowText(idAnswer, title, description)
@@ -9,9 +9,6 @@ import ch.heigvd.pro.b04.android.network.RequestsViewModel
 import kotlinx.coroutines.ExperimentalCoroutinesApi
 import kotlinx.coroutines.FlowPreview
 import kotlinx.coroutines.flow.Flow
-import kotlinx.coroutines.flow.MutableStateFlow
-import kotlinx.coroutines.flow.filterNotNull
-import kotlinx.coroutines.flow.map
 
 @OptIn(ExperimentalCoroutinesApi::class, FlowPreview::class)
 class QuestionViewModel(
@@ -25,35 +22,32 @@ class QuestionViewModel(
         token
 ) {
 
-    private val previousQuestion: MutableStateFlow<Long> = MutableStateFlow(System.currentTimeMillis())
-    private val nextQuestion: MutableStateFlow<Long> = MutableStateFlow(System.currentTimeMillis())
-    private val votes: MutableStateFlow<Pair<Long, Answer?>> = MutableStateFlow(System.currentTimeMillis() to null)
+    private val actions = UserActions()
 
     private val pollState: PollState = PollState(
             viewModelScope,
+            repository,
             Poll(question.idModerator.toInt(), question.idPoll.toInt()),
             question,
             token,
-            nextQuestion.map {},
-            previousQuestion.map {},
-            votes.map { (_, answer) -> answer }.filterNotNull()
+            actions.moveToNext,
+            actions.moveToPrevious,
+            actions.votes
     )
 
-    val currentQuestion: Flow<Question> = pollState.data.map { it.current }
-    val answers: Flow<List<Answer>> = pollState.data.map {
-        it.map[it.current]?.map { it.answer } ?: emptyList()
-    }
+    val currentQuestion: Flow<Question> = pollState.currentQuestion
+    val answers: Flow<List<Answer>> = pollState.currentAnswers
 
     fun selectAnswer(answer: Answer) {
-        votes.value = System.currentTimeMillis() to answer
+        actions.vote(answer)
     }
 
     fun changeToPreviousQuestion() {
-        previousQuestion.value = System.currentTimeMillis()
+        actions.previous()
     }
 
     fun changeToNextQuestion() {
-        nextQuestion.value = System.currentTimeMillis()
+        actions.next()
     }
 
     fun getMinCheckedAnswers(): Flow<Int?> {
@@ -0,0 +1,50 @@
+package ch.heigvd.pro.b04.android.question
+
+import ch.heigvd.pro.b04.android.datamodel.Answer
+import kotlinx.coroutines.ExperimentalCoroutinesApi
+import kotlinx.coroutines.FlowPreview
+import kotlinx.coroutines.channels.BroadcastChannel
+import kotlinx.coroutines.channels.Channel
+import kotlinx.coroutines.flow.Flow
+import kotlinx.coroutines.flow.asFlow
+
+/**
+ * The actions of the participant on the questions of a poll, which feed a [PollState]. Each action
+ * is delivered once to the current collectors, and is never replayed to a new collector : opening
+ * a question must not replay a click on the navigation buttons.
+ */
+@FlowPreview
+@ExperimentalCoroutinesApi
+class UserActions {
+
+    private val nextClicks = BroadcastChannel<Unit>(Channel.BUFFERED)
+    private val previousClicks = BroadcastChannel<Unit>(Channel.BUFFERED)
+    private val selectedAnswers = BroadcastChannel<Answer>(Channel.BUFFERED)
+
+    /**
+     * A [Flow] that emits when the participant clicks the next button.
+     */
+    val moveToNext: Flow<Unit> = nextClicks.asFlow()
+
+    /**
+     * A [Flow] that emits when the participant clicks the previous button.
+     */
+    val moveToPrevious: Flow<Unit> = previousClicks.asFlow()
+
+    /**
+     * A [Flow] that emits when the participant votes for an answer.
+     */
+    val votes: Flow<Answer> = selectedAnswers.asFlow()
+
+    fun next() {
+        nextClicks.offer(Unit)
+    }
+
+    fun previous() {
+        previousClicks.offer(Unit)
+    }
+
+    fun vote(answer: Answer) {
+        selectedAnswers.offer(answer)
+    }
+}
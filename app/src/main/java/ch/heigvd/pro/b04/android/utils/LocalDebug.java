@@ -28,4 +28,22 @@ public class LocalDebug {
     public static <T> void logFailedRequest(Call<T> call, Throwable t) {
         Log.e(TAG, "Error in " + call.request().url() + " : " + t.getMessage());
     }
+
+    public static <T> void logUnsuccessfulResponse(Response<T> response) {
+        Log.w(TAG, "Received error, HTTP status is " + response.code());
+        Log.w(TAG, "The request was " + response.raw().request().url());
+
+        if (response.errorBody() == null) {
+            return;
+        }
+        try {
+            Log.w(TAG, response.errorBody().string());
+        } catch (IOException e) {
+            Log.e(TAG, "Parsing errorBody");
+        }
+    }
+
+    public static void logFailedRequest(String path, Throwable t) {
+        Log.e(TAG, "Error in " + path + " : " + t.getMessage());
+    }
 }
@@ -0,0 +1,33 @@
+package ch.heigvd.pro.b04.android.utils
+
+import androidx.recyclerview.widget.ListUpdateCallback
+import androidx.recyclerview.widget.RecyclerView
+
+/**
+ * A [ListUpdateCallback] that dispatches the updates of a diffed list to a [RecyclerView.Adapter]
+ * which displays some fixed rows, such as headers, before the items of the list.
+ *
+ * @param adapter The adapter to notify.
+ * @param offset The number of rows displayed before the first item of the list.
+ */
+class OffsetListUpdateCallback(
+        private val adapter: RecyclerView.Adapter<*>,
+        private val offset: Int
+) : ListUpdateCallback {
+
+    override fun onInserted(position: Int, count: Int) {
+        adapter.notifyItemRangeInserted(position + offset, count)
+    }
+
+    override fun onRemoved(position: Int, count: Int) {
+        adapter.notifyItemRangeRemoved(position + offset, count)
+    }
+
+    override fun onMoved(fromPosition: Int, toPosition: Int) {
+        adapter.notifyItemMoved(fromPosition + offset, toPosition + offset)
+    }
+
+    override fun onChanged(position: Int, count: Int, payload: Any?) {
+        adapter.notifyItemRangeChanged(position + offset, count, payload)
+    }
+}
@@ -0,0 +1,187 @@
+package ch.heigvd.pro.b04.android.utils
+
+import android.content.Context
+import android.graphics.Color
+import android.os.Handler
+import android.os.Looper
+import android.text.SpannableString
+import android.text.style.ForegroundColorSpan
+import android.util.LruCache
+import android.view.LayoutInflater
+import android.widget.FrameLayout
+import android.widget.TextView
+import androidx.annotation.IdRes
+import androidx.annotation.LayoutRes
+import androidx.core.content.ContextCompat
+import androidx.core.text.PrecomputedTextCompat
+import androidx.core.widget.TextViewCompat
+import ch.heigvd.pro.b04.android.R
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.asExecutor
+import kotlinx.coroutines.withContext
+import java.util.*
+
+/**
+ * The default minimum number of texts kept by a [RowTextCache].
+ */
+private const val ROW_TEXT_CACHE_SIZE = 128
+
+/**
+ * The content of a row made of a title, and some optional details displayed below it.
+ *
+ * @param id The identifier of the displayed item.
+ */
+data class RowText(
+        val id: Long,
+        val title: String,
+        val details: String?
+)
+
+/**
+ * A cache of the styled texts displayed in the rows of a list. The texts are built and measured
+ * off the main thread with [prefetch], ahead of binding, so that binding a row becomes a cheap
+ * lookup. Texts are identified by the identifier of their item and a hash of their content, so an
+ * edited item is never displayed with a stale text.
+ *
+ * The cache grows to hold the whole prefetched list, so that the rows are not evicted before being
+ * bound. A row that misses the cache anyway is displayed as a plain text right away, and measured
+ * in the background.
+ *
+ * @param context The [Context] used to resolve the colours.
+ * @param minSize The minimum number of cached texts.
+ */
+class RowTextCache(context: Context, private val minSize: Int = ROW_TEXT_CACHE_SIZE) {
+
+    private data class Key(val id: Long, val hash: Int)
+
+    private val detailsColor = ContextCompat.getColor(context, R.color.colorDescription)
+    private val texts = LruCache<Key, CharSequence>(minSize)
+
+    /**
+     * The row displayed by each [TextView], so that a text measured in the background is only
+     * displayed if its view was not rebound meanwhile. Only accessed on the main thread.
+     */
+    private val bound = WeakHashMap<TextView, Key>()
+    private val main = Handler(Looper.getMainLooper())
+
+    /**
+     * The text metrics of the rows, known once a row has been attached.
+     */
+    @Volatile
+    private var params: PrecomputedTextCompat.Params? = null
+
+    /**
+     * Registers the [TextView] in which the texts are displayed, so that the next texts can be
+     * measured ahead of time. All the rows are expected to share the same text style. If the
+     * metrics differ from the known ones, the cached texts are measured again when next used.
+     */
+    fun attach(view: TextView) {
+        val measured = TextViewCompat.getTextMetricsParams(view)
+        if (measured != params) {
+            params = measured
+        }
+    }
+
+    /**
+     * Inflates a row layout that is not displayed, and registers its [TextView], so that the
+     * texts can be measured before the first row is even created.
+     *
+     * @param layout The layout of the rows.
+     * @param id The identifier of the [TextView] of the rows.
+     */
+    fun attachPrototype(context: Context, @LayoutRes layout: Int, @IdRes id: Int) {
+        val row = LayoutInflater.from(context).inflate(layout, FrameLayout(context), false)
+        attach(row.findViewById(id))
+    }
+
+    /**
+     * Builds and measures the texts of some rows on a background thread. The cache is resized to
+     * hold all of them.
+     */
+    suspend fun prefetch(rows: List<RowText>) = withContext(Dispatchers.Default) {
+        texts.resize(maxOf(minSize, rows.size))
+        rows.forEach { text(it) }
+    }
+
+    /**
+     * Displays the text of a row in a [TextView]. If it was not prefetched, the text is displayed
+     * without being measured, and replaced once it has been measured in the background.
+     */
+    fun bind(view: TextView, row: RowText) {
+        val key = key(row)
+        val params = params
+        bound[view] = key
+
+        val cached = cached(key, params)
+        if (cached != null) {
+            display(view, cached)
+            return
+        }
+
+        view.text = build(row)
+        if (params == null) return
+        Dispatchers.Default.asExecutor().execute {
+            val text = PrecomputedTextCompat.create(build(row), params)
+            texts.put(key, text)
+            main.post {
+                if (bound[view] == key) display(view, text)
+            }
+        }
+    }
+
+    private fun display(view: TextView, text: CharSequence) {
+        if (text is PrecomputedTextCompat) {
+            try {
+                TextViewCompat.setPrecomputedText(view, text)
+                return
+            } catch (mismatch: IllegalArgumentException) {
+                // The text was measured for another style, display it as a regular text.
+            }
+        }
+        view.text = text
+    }
+
+    private fun key(row: RowText) = Key(row.id, Objects.hash(row.title, row.details))
+
+    /**
+     * Returns the cached text of a row, unless it was built before the metrics were known, or for
+     * other metrics, in which case it must be measured again.
+     */
+    private fun cached(key: Key, params: PrecomputedTextCompat.Params?): CharSequence? {
+        val cached = texts.get(key) ?: return null
+        return cached.takeIf { params == null || (it as? PrecomputedTextCompat)?.params == params }
+    }
+
+    private fun text(row: RowText): CharSequence {
+        val key = key(row)
+        val params = params
+        cached(key, params)?.let { return it }
+
+        val spannable = build(row)
+        val text = params?.let { PrecomputedTextCompat.create(spannable, it) } ?: spannable
+        texts.put(key, text)
+        return text
+    }
+
+    private fun build(row: RowText): CharSequence {
+        var text = row.title
+
+        if (row.details != null && row.details != "") {
+            text += "\n" + row.details
+        }
+
+        val spannable = SpannableString(text)
+        spannable.setSpan(ForegroundColorSpan(Color.BLACK), 0, row.title.length, 0)
+
+        if (row.details != null && row.details != "") {
+            spannable.setSpan(
+                    ForegroundColorSpan(detailsColor),
+                    row.title.length + 1,
+                    text.length,
+                    0
+            )
+        }
+
+        return spannable
+    }
+}
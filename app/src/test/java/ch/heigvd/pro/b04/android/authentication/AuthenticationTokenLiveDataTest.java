@@ -0,0 +1,184 @@
+package ch.heigvd.pro.b04.android.authentication;
+
+import android.content.Context;
+import android.content.ContextWrapper;
+import android.content.SharedPreferences;
+import android.os.Looper;
+
+import androidx.lifecycle.Observer;
+import androidx.test.core.app.ApplicationProvider;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.Assert.*;
+import static org.robolectric.Shadows.shadowOf;
+
+/**
+ * Checks that the token store never accesses the preferences on the main thread, and that its
+ * observers are notified once per change.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+public class AuthenticationTokenLiveDataTest {
+
+    private static final String PREFERENCE_FILE = "token.xml";
+    private static final String TOKEN_PREF_KEY = "AUTH_TOKEN";
+
+    /**
+     * The threads on which the preferences were opened or accessed.
+     */
+    private final List<Thread> threads = new CopyOnWriteArrayList<>();
+
+    private SharedPreferences stored;
+    private Context context;
+
+    @Before
+    public void setUp() {
+        Context application = ApplicationProvider.getApplicationContext();
+        stored = application.getSharedPreferences(PREFERENCE_FILE, Context.MODE_PRIVATE);
+        stored.edit().putString(TOKEN_PREF_KEY, "stored").commit();
+
+        context = new ContextWrapper(application) {
+            @Override
+            public Context getApplicationContext() {
+                return this;
+            }
+
+            @Override
+            public SharedPreferences getSharedPreferences(String name, int mode) {
+                threads.add(Thread.currentThread());
+                SharedPreferences preferences = super.getSharedPreferences(name, mode);
+                return (SharedPreferences) Proxy.newProxyInstance(
+                        SharedPreferences.class.getClassLoader(),
+                        new Class<?>[]{SharedPreferences.class},
+                        (proxy, method, args) -> {
+                            threads.add(Thread.currentThread());
+                            return method.invoke(preferences, args);
+                        });
+            }
+        };
+    }
+
+    @After
+    public void tearDown() {
+        AuthenticationTokenLiveData.reset();
+    }
+
+    /**
+     * Runs the main looper until the condition holds, while the disk thread works.
+     */
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (!condition.getAsBoolean()) {
+            assertTrue("Timed out", System.currentTimeMillis() < deadline);
+            shadowOf(Looper.getMainLooper()).idle();
+            Thread.sleep(1);
+        }
+    }
+
+    private AuthenticationTokenLiveData loaded() throws InterruptedException {
+        AuthenticationTokenLiveData.initialize(context);
+        AuthenticationTokenLiveData store = AuthenticationTokenLiveData.getInstance();
+        await(() -> store.getValue() != null);
+        return store;
+    }
+
+    private void assertNoMainThreadAccess() {
+        assertFalse(threads.isEmpty());
+        for (Thread thread : threads) {
+            assertNotSame(Looper.getMainLooper().getThread(), thread);
+        }
+    }
+
+    @Test
+    public void initialLoad_isDeliveredAsynchronously_offTheMainThread() throws InterruptedException {
+        AuthenticationTokenLiveData.initialize(context);
+        AuthenticationTokenLiveData store = AuthenticationTokenLiveData.getInstance();
+
+        assertNull(store.getValue());
+
+        await(() -> store.getValue() != null);
+        assertEquals(Optional.of("stored"), store.getValue());
+        assertNoMainThreadAccess();
+    }
+
+    @Test
+    public void login_isPersistedOffTheMainThread() throws InterruptedException {
+        AuthenticationTokenLiveData store = loaded();
+
+        store.login("entered");
+
+        assertEquals(Optional.of("entered"), store.getValue());
+        await(() -> "entered".equals(stored.getString(TOKEN_PREF_KEY, null)));
+        assertNoMainThreadAccess();
+    }
+
+    @Test
+    public void logout_isPersistedOffTheMainThread() throws InterruptedException {
+        AuthenticationTokenLiveData store = loaded();
+
+        store.logout();
+
+        assertEquals(Optional.empty(), store.getValue());
+        await(() -> !stored.contains(TOKEN_PREF_KEY));
+        assertNoMainThreadAccess();
+    }
+
+    /**
+     * A token entered while the stored one is being delivered to the main thread is kept.
+     */
+    @Test
+    public void loginDuringInitialLoad_isNotOverwritten() throws InterruptedException {
+        AuthenticationTokenLiveData.initialize(context);
+        AuthenticationTokenLiveData store = AuthenticationTokenLiveData.getInstance();
+        // Waits for the stored token to be read, without delivering it yet.
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (shadowOf(Looper.getMainLooper()).getScheduler().size() == 0) {
+            assertTrue("Timed out", System.currentTimeMillis() < deadline);
+            Thread.sleep(1);
+        }
+
+        store.login("entered");
+        shadowOf(Looper.getMainLooper()).idle();
+
+        assertEquals(Optional.of("entered"), store.getValue());
+    }
+
+    /**
+     * The poll screens log out when they observe an empty token, which must not notify them again.
+     */
+    @Test
+    public void logoutOnEmptyToken_doesNotLoop() throws InterruptedException {
+        AuthenticationTokenLiveData store = loaded();
+        List<Optional<String>> observed = new CopyOnWriteArrayList<>();
+        Observer<Optional<String>> observer = token -> {
+            observed.add(token);
+            if (!token.isPresent()) {
+                store.logout();
+            }
+        };
+        store.observeForever(observer);
+
+        store.logout();
+        store.logout();
+        store.login("entered");
+        store.login("entered");
+
+        store.removeObserver(observer);
+        assertEquals(
+                Arrays.asList(Optional.of("stored"), Optional.empty(), Optional.of("entered")),
+                observed);
+    }
+}
@@ -0,0 +1,26 @@
+package ch.heigvd.pro.b04.android.datamodel
+
+import ch.heigvd.pro.b04.android.network.Rockin
+
+/**
+ * Builds the data model through [Rockin.gson], just like the responses of the server, since the
+ * classes have no public constructor with all their fields.
+ */
+fun question(
+        idQuestion: Long,
+        indexInPoll: Double = idQuestion.toDouble(),
+        title: String = "Question $idQuestion",
+        answerMin: Int = 0,
+        answerMax: Int = 0
+): Question = Rockin.gson.fromJson("""{"idModerator":1,"idPoll":2,"idQuestion":$idQuestion,""" +
+        """"indexInPoll":$indexInPoll,"title":"$title","details":"",""" +
+        """"answerMin":$answerMin,"answerMax":$answerMax}""", Question::class.java)
+
+fun answer(
+        idQuestion: Long,
+        idAnswer: Long,
+        checked: Boolean = false,
+        title: String = "Answer $idAnswer"
+): Answer = Rockin.gson.fromJson("""{"idModerator":1,"idPoll":2,"idQuestion":$idQuestion,""" +
+        """"idAnswer":$idAnswer,"title":"$title","description":"","checked":$checked}""",
+        Answer::class.java)
@@ -0,0 +1,138 @@
+package ch.heigvd.pro.b04.android.datamodel;
+
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+
+import org.junit.Test;
+
+import java.lang.reflect.Type;
+import java.util.List;
+
+import ch.heigvd.pro.b04.android.network.Rockin;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks that the streaming adapters registered on {@link Rockin#getGson()} read and write the
+ * data model exactly like the reflective adapters of a plain {@link Gson} instance.
+ */
+public class GsonAdapterTest {
+
+    private static final String POLL =
+            "{\"idModerator\":1,\"idPoll\":2,\"title\":\"A poll\"}";
+    private static final String QUESTION =
+            "{\"idModerator\":1,\"idPoll\":2,\"idQuestion\":3,\"indexInPoll\":1.5,"
+                    + "\"title\":\"A question\",\"details\":\"Some details\","
+                    + "\"answerMin\":1,\"answerMax\":2}";
+    private static final String ANSWER =
+            "{\"idModerator\":1,\"idPoll\":2,\"idQuestion\":3,\"idAnswer\":4,"
+                    + "\"title\":\"An answer\",\"description\":\"A description\",\"checked\":true}";
+    private static final String SESSION =
+            "{\"idModerator\":\"1\",\"idPoll\":\"2\",\"idSession\":\"5\","
+                    + "\"code\":\"0x1234\",\"status\":\"open\"}";
+
+    private final Gson streaming = Rockin.INSTANCE.getGson();
+    private final Gson reflective = new Gson();
+
+    /**
+     * Parses the JSON with both instances, and compares the results through their reflective
+     * serialization, which covers every field.
+     */
+    private <T> T assertSameParsing(String json, Class<T> type) {
+        T parsed = streaming.fromJson(json, type);
+        assertEquals(reflective.toJson(reflective.fromJson(json, type)), reflective.toJson(parsed));
+        return parsed;
+    }
+
+    private <T> void assertRoundTrip(String json, Class<T> type) {
+        T parsed = streaming.fromJson(json, type);
+        T reparsed = streaming.fromJson(streaming.toJson(parsed), type);
+        assertEquals(reflective.toJson(parsed), reflective.toJson(reparsed));
+    }
+
+    @Test
+    public void poll_matchesReflectiveParsing() {
+        Poll poll = assertSameParsing(POLL, Poll.class);
+        assertEquals(1, poll.getIdModerator());
+        assertEquals(2, poll.getIdPoll());
+        assertEquals("A poll", poll.getTitle());
+    }
+
+    @Test
+    public void question_matchesReflectiveParsing() {
+        Question question = assertSameParsing(QUESTION, Question.class);
+        assertEquals(3, question.getIdQuestion());
+        assertEquals(1.5, question.getIndexInPoll(), 0);
+        assertEquals("Some details", question.getDetails());
+        assertEquals(2, question.getAnswerMax());
+    }
+
+    @Test
+    public void answer_matchesReflectiveParsing() {
+        Answer answer = assertSameParsing(ANSWER, Answer.class);
+        assertEquals(4, answer.getIdAnswer());
+        assertEquals("A description", answer.getDescription());
+        assertTrue(answer.isChecked());
+    }
+
+    @Test
+    public void session_matchesReflectiveParsing() {
+        Session session = assertSameParsing(SESSION, Session.class);
+        assertEquals("1", session.getIdModerator());
+        assertEquals("0x1234", session.getCode());
+    }
+
+    @Test
+    public void lists_matchReflectiveParsing() {
+        Type type = new TypeToken<List<Answer>>() {}.getType();
+        String json = "[" + ANSWER + "," + ANSWER.replace("\"idAnswer\":4", "\"idAnswer\":5") + "]";
+        List<Answer> parsed = streaming.fromJson(json, type);
+        List<Answer> expected = reflective.fromJson(json, type);
+        assertEquals(2, parsed.size());
+        assertEquals(reflective.toJson(expected), reflective.toJson(parsed));
+    }
+
+    @Test
+    public void allClasses_roundTrip() {
+        assertRoundTrip(POLL, Poll.class);
+        assertRoundTrip(QUESTION, Question.class);
+        assertRoundTrip(ANSWER, Answer.class);
+        assertRoundTrip(SESSION, Session.class);
+    }
+
+    @Test
+    public void unknownFields_areSkipped() {
+        String json = "{\"extra\":{\"nested\":[1,2,{\"deep\":null}]},"
+                + ANSWER.substring(1, ANSWER.length() - 1)
+                + ",\"more\":[\"a\",\"b\"],\"flag\":false}";
+        Answer answer = assertSameParsing(json, Answer.class);
+        assertEquals(4, answer.getIdAnswer());
+        assertTrue(answer.isChecked());
+    }
+
+    @Test
+    public void nullFields_keepDefaultValues() {
+        String json = "{\"idModerator\":null,\"idPoll\":2,\"idQuestion\":null,"
+                + "\"indexInPoll\":null,\"title\":null,\"answerMin\":null,\"answerMax\":3}";
+        Question question = assertSameParsing(json, Question.class);
+        assertEquals(0, question.getIdQuestion());
+        assertNull(question.getTitle());
+        assertEquals(3, question.getAnswerMax());
+    }
+
+    @Test
+    public void missingFields_keepDefaultValues() {
+        Answer answer = assertSameParsing("{\"idAnswer\":4}", Answer.class);
+        assertEquals(4, answer.getIdAnswer());
+        assertFalse(answer.isChecked());
+    }
+
+    @Test
+    public void nullObjects_areParsedAsNull() {
+        assertNull(streaming.fromJson("null", Poll.class));
+        Type type = new TypeToken<List<Question>>() {}.getType();
+        List<Question> questions = streaming.fromJson("[null," + QUESTION + "]", type);
+        assertNull(questions.get(0));
+        assertEquals(3, questions.get(1).getIdQuestion());
+    }
+}
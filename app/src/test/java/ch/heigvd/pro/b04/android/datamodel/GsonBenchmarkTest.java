@@ -0,0 +1,111 @@
+package ch.heigvd.pro.b04.android.datamodel;
+
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Type;
+import java.util.List;
+
+import ch.heigvd.pro.b04.android.network.Rockin;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Compares the throughput and the allocations of the reflective and the streaming parsing of
+ * lists of answers, as polled every second. This runs on the JVM of the development machine, so
+ * the figures are only meaningful relative to each other.
+ */
+public class GsonBenchmarkTest {
+
+    private static final int[] SIZES = {10, 1_000, 10_000};
+
+    /**
+     * The number of answers parsed for the warmup and the measure of each size.
+     */
+    private static final int WARMUP_ANSWERS = 500_000;
+    private static final int MEASURED_ANSWERS = 500_000;
+
+    private static final Type ANSWERS = new TypeToken<List<Answer>>() {}.getType();
+
+    private static String answers(int count) {
+        StringBuilder json = new StringBuilder("[");
+        for (int i = 0; i < count; i++) {
+            if (i > 0) json.append(',');
+            json.append("{\"idModerator\":1,\"idPoll\":2,\"idQuestion\":3,\"idAnswer\":")
+                    .append(i)
+                    .append(",\"title\":\"Answer ")
+                    .append(i)
+                    .append("\",\"description\":\"The description of answer ")
+                    .append(i)
+                    .append("\",\"checked\":")
+                    .append(i % 2 == 0)
+                    .append('}');
+        }
+        return json.append(']').toString();
+    }
+
+    /**
+     * Returns the number of bytes allocated so far by the current thread, or -1 if the JVM does
+     * not report it.
+     */
+    private static long allocatedBytes() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) bean)
+                    .getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return -1;
+    }
+
+    private static final class Result {
+        final double parsesPerSecond;
+        final long bytesPerParse;
+
+        Result(double parsesPerSecond, long bytesPerParse) {
+            this.parsesPerSecond = parsesPerSecond;
+            this.bytesPerParse = bytesPerParse;
+        }
+    }
+
+    private static Result measure(Gson gson, String json, int size) {
+        int rounds = Math.max(1, MEASURED_ANSWERS / size);
+        for (int i = 0; i < Math.max(1, WARMUP_ANSWERS / size); i++) {
+            gson.fromJson(json, ANSWERS);
+        }
+
+        long allocated = allocatedBytes();
+        long start = System.nanoTime();
+        int parsed = 0;
+        for (int i = 0; i < rounds; i++) {
+            List<Answer> answers = gson.fromJson(json, ANSWERS);
+            parsed += answers.size();
+        }
+        long elapsed = System.nanoTime() - start;
+        long bytes = allocated < 0 ? -1 : (allocatedBytes() - allocated) / rounds;
+
+        assertEquals(rounds * size, parsed);
+        return new Result(rounds * 1e9 / elapsed, bytes);
+    }
+
+    @Test
+    public void answers_reflectiveVersusStreaming() {
+        Gson reflective = new Gson();
+        Gson streaming = Rockin.INSTANCE.getGson();
+
+        System.out.println("Parsing lists of answers (parses/s, bytes allocated per parse) :");
+        for (int size : SIZES) {
+            String json = answers(size);
+            Result slow = measure(reflective, json, size);
+            Result fast = measure(streaming, json, size);
+            System.out.println(String.format(
+                    "  %6d answers : reflective %10.1f/s %12d B, streaming %10.1f/s %12d B (x%.2f)",
+                    size,
+                    slow.parsesPerSecond, slow.bytesPerParse,
+                    fast.parsesPerSecond, fast.bytesPerParse,
+                    fast.parsesPerSecond / slow.parsesPerSecond));
+        }
+    }
+}
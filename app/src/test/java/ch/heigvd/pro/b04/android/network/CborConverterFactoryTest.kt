@@ -0,0 +1,232 @@
+package ch.heigvd.pro.b04.android.network
+
+import ch.heigvd.pro.b04.android.datamodel.Answer
+import com.google.gson.*
+import com.google.gson.reflect.TypeToken
+import kotlinx.coroutines.runBlocking
+import okhttp3.MediaType
+import okhttp3.ResponseBody
+import okhttp3.mockwebserver.MockResponse
+import okhttp3.mockwebserver.MockWebServer
+import okio.Buffer
+import okio.ByteString
+import org.junit.After
+import org.junit.Assert.*
+import org.junit.Before
+import org.junit.Test
+import retrofit2.Converter
+import retrofit2.Retrofit
+import retrofit2.converter.gson.GsonConverterFactory
+
+private val CBOR = MediaType.get("application/cbor")
+private val JSON = MediaType.get("application/json")
+
+private const val BENCHMARK_ANSWERS = 1_000
+private const val WARMUP_ROUNDS = 200
+private const val MEASURED_ROUNDS = 200
+
+/**
+ * Writes the CBOR head of an item : its major type, and its argument in the shortest form.
+ */
+private fun Buffer.head(major: Int, value: Long) {
+    val type = major shl 5
+    when {
+        value < 24 -> writeByte(type or value.toInt())
+        value < 0x100 -> writeByte(type or 24).writeByte(value.toInt())
+        value < 0x10000 -> writeByte(type or 25).writeShort(value.toInt())
+        value < 0x100000000 -> writeByte(type or 26).writeInt(value.toInt())
+        else -> writeByte(type or 27).writeLong(value)
+    }
+}
+
+/**
+ * A minimal CBOR encoder of [JsonElement]s, standing for the server. Integral numbers are encoded
+ * as integers, and the other ones as doubles.
+ */
+private fun Buffer.writeCbor(element: JsonElement): Buffer = apply {
+    when {
+        element.isJsonNull -> writeByte(0xF6)
+        element is JsonPrimitive && element.isBoolean -> writeByte(if (element.asBoolean) 0xF5 else 0xF4)
+        element is JsonPrimitive && element.isString -> {
+            val bytes = ByteString.encodeUtf8(element.asString)
+            head(3, bytes.size().toLong())
+            write(bytes)
+        }
+        element is JsonPrimitive -> {
+            val value = element.asDouble
+            if (value == Math.rint(value) && Math.abs(value) < 1e15) {
+                val integer = value.toLong()
+                if (integer >= 0) head(0, integer) else head(1, -1 - integer)
+            } else {
+                writeByte(0xFB).writeLong(value.toRawBits())
+            }
+        }
+        element is JsonArray -> {
+            head(4, element.size().toLong())
+            element.forEach { writeCbor(it) }
+        }
+        element is JsonObject -> {
+            head(5, element.size().toLong())
+            element.entrySet().forEach { (key, value) ->
+                writeCbor(JsonPrimitive(key))
+                writeCbor(value)
+            }
+        }
+    }
+}
+
+private fun parse(json: String): JsonElement = JsonParser().parse(json)
+
+private fun cbor(json: String): Buffer = Buffer().writeCbor(parse(json))
+
+private fun answers(count: Int): String = (1..count).joinToString(",", "[", "]") {
+    """{"idModerator":1,"idPoll":2,"idQuestion":3,"idAnswer":$it,"title":"Answer $it",""" +
+            """"description":"The description of answer $it","checked":${it % 2 == 0}}"""
+}
+
+class CborConverterFactoryTest {
+
+    private lateinit var server: MockWebServer
+    private lateinit var api: RockinAPI
+
+    private val reflective = Gson()
+
+    @Before
+    fun setUp() {
+        server = MockWebServer()
+        server.start()
+        api = server.rockinApi()
+    }
+
+    @After
+    fun tearDown() {
+        server.shutdown()
+    }
+
+    private fun decode(hex: String): JsonElement =
+            JsonParser().parse(CborJsonReader(Buffer().write(ByteString.decodeHex(hex))))
+
+    @Test
+    fun reader_decodesSpecificationExamples() {
+        // Examples of the appendix A of RFC 7049.
+        assertEquals(JsonPrimitive(0L), decode("00"))
+        assertEquals(JsonPrimitive(1000L), decode("1903e8"))
+        assertEquals(JsonPrimitive(1000000000000L), decode("1b000000e8d4a51000"))
+        assertEquals("18446744073709551615", decode("1bffffffffffffffff").asString)
+        assertEquals(JsonPrimitive(-100L), decode("3863"))
+        assertEquals(1.0, decode("f93c00").asDouble, 0.0)
+        assertEquals(-4.0, decode("f9c400").asDouble, 0.0)
+        assertEquals(100000.0, decode("fa47c35000").asDouble, 0.0)
+        assertEquals(1.1, decode("fb3ff199999999999a").asDouble, 0.0)
+        assertEquals(JsonPrimitive(false), decode("f4"))
+        assertEquals(JsonNull.INSTANCE, decode("f6"))
+        assertEquals(JsonPrimitive("IETF"), decode("6449455446"))
+        assertEquals(JsonPrimitive("ü"), decode("62c3bc"))
+        assertEquals(JsonPrimitive("streaming"), decode("7f657374726561646d696e67ff"))
+        assertEquals(JsonPrimitive("AQIDBA=="), decode("4401020304"))
+        assertEquals(JsonPrimitive(1363896240L), decode("c11a514b67b0"))
+        assertEquals(parse("[1,[2,3],[4,5]]"), decode("8301820203820405"))
+        assertEquals(parse("[1,[2,3],[4,5]]"), decode("9f018202039f0405ffff"))
+        assertEquals(parse("""{"a":1,"b":[2,3]}"""), decode("a26161016162820203"))
+        assertEquals(parse("""{"Fun":true,"Amt":-2}"""), decode("bf6346756ef563416d7421ff"))
+        assertEquals(parse("""{"1":2,"3":4}"""), decode("a201020304"))
+    }
+
+    @Test
+    fun cborAndJson_decodeToSameObjects() {
+        val json = answers(20)
+        server.enqueue(MockResponse().setHeader("Content-Type", CBOR).setBody(cbor(json)))
+        server.enqueue(MockResponse().setHeader("Content-Type", JSON).setBody(json))
+
+        val fromCbor = runBlocking { api.getAnswersSuspending(1, 2, 3, "token", null) }.body()
+        val fromJson = runBlocking { api.getAnswersSuspending(1, 2, 3, "token", null) }.body()
+
+        assertEquals(20, fromCbor?.size)
+        assertEquals(reflective.toJson(fromJson), reflective.toJson(fromCbor))
+    }
+
+    @Test
+    fun unknownValues_areSkipped() {
+        val json = """[{"idAnswer":1,"extra":{"nested":[1,{"a":null}],"b":"x"},"title":"Answer"}]"""
+        server.enqueue(MockResponse().setHeader("Content-Type", CBOR).setBody(cbor(json)))
+
+        val answers = runBlocking { api.getAnswersSuspending(1, 2, 3, "token", null) }.body()
+
+        assertEquals(1L, answers?.single()?.idAnswer)
+        assertEquals("Answer", answers?.single()?.title)
+    }
+
+    @Test
+    fun trailingItems_areRejected() {
+        val body = cbor("""{"idModerator":1,"idPoll":2,"title":"Poll"}""").writeCbor(JsonPrimitive(1))
+        server.enqueue(MockResponse().setHeader("Content-Type", CBOR).setBody(body))
+
+        assertThrows(JsonIOException::class.java) {
+            runBlocking { api.getPollSuspending(1, 2, "token", null) }
+        }
+    }
+
+    @Test
+    fun polledRequests_acceptCompactEncoding() {
+        server.enqueue(MockResponse().setHeader("Content-Type", JSON).setBody("[]"))
+
+        runBlocking { api.getAnswersSuspending(1, 2, 3, "token", null) }
+
+        assertEquals("application/cbor, application/json;q=0.9", server.takeRequest().getHeader("Accept"))
+    }
+
+    @Test
+    fun otherEncodings_fallBackToJson() {
+        server.enqueue(MockResponse().setBody("""{"idModerator":1,"idPoll":2,"title":"Poll"}"""))
+
+        val poll = runBlocking { api.getPollSuspending(1, 2, "token", null) }.body()
+
+        assertEquals("Poll", poll?.title)
+    }
+
+    @Test
+    fun cborParameters_areIgnored() {
+        val body = cbor("""{"idModerator":1,"idPoll":2,"title":"Poll"}""")
+        server.enqueue(MockResponse().setHeader("Content-Type", "application/cbor; charset=binary").setBody(body))
+
+        val poll = runBlocking { api.getPollSuspending(1, 2, "token", null) }.body()
+
+        assertEquals("Poll", poll?.title)
+    }
+
+    /**
+     * Compares the size and the decoding time of a list of answers in both encodings.
+     */
+    @Test
+    fun answers_sizeAndParseTime() {
+        val json = answers(BENCHMARK_ANSWERS)
+        val cbor = cbor(json).readByteString()
+
+        val retrofit = Retrofit.Builder()
+                .baseUrl(server.url("/"))
+                .addConverterFactory(CborConverterFactory(Rockin.gson))
+                .addConverterFactory(GsonConverterFactory.create(Rockin.gson))
+                .build()
+        val type = object : TypeToken<List<Answer>>() {}.type
+        @Suppress("UNCHECKED_CAST")
+        val converter = retrofit.responseBodyConverter<Any>(type, emptyArray()) as Converter<ResponseBody, List<Answer>>
+
+        val cborMillis = measure { converter.convert(ResponseBody.create(CBOR, cbor))!! }
+        val jsonMillis = measure { converter.convert(ResponseBody.create(JSON, json))!! }
+
+        println("Decoding $BENCHMARK_ANSWERS answers :")
+        println("  JSON : ${ByteString.encodeUtf8(json).size()} bytes, ${"%.3f".format(jsonMillis)} ms")
+        println("  CBOR : ${cbor.size()} bytes, ${"%.3f".format(cborMillis)} ms")
+        assertTrue(cbor.size() < ByteString.encodeUtf8(json).size())
+    }
+
+    /**
+     * Returns the average duration of the [block], in milliseconds.
+     */
+    private fun measure(block: () -> List<Answer>): Double {
+        repeat(WARMUP_ROUNDS) { block() }
+        val start = System.nanoTime()
+        repeat(MEASURED_ROUNDS) { assertEquals(BENCHMARK_ANSWERS, block().size) }
+        return (System.nanoTime() - start) / 1e6 / MEASURED_ROUNDS
+    }
+}
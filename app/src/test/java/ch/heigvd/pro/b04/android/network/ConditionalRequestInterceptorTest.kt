@@ -0,0 +1,191 @@
+package ch.heigvd.pro.b04.android.network
+
+import kotlinx.coroutines.flow.asFlow
+import kotlinx.coroutines.flow.toList
+import kotlinx.coroutines.runBlocking
+import okhttp3.OkHttpClient
+import okhttp3.mockwebserver.MockResponse
+import okhttp3.mockwebserver.MockWebServer
+import org.junit.After
+import org.junit.Assert.*
+import org.junit.Before
+import org.junit.Test
+import java.net.HttpURLConnection.HTTP_NOT_MODIFIED
+
+private const val POLL = """{"idModerator":1,"idPoll":2,"title":"Poll"}"""
+private const val LAST_MODIFIED = "Mon, 01 Jun 2020 10:00:00 GMT"
+
+/**
+ * The number of ticks of a polling loop in a minute.
+ */
+private const val TICKS_PER_MINUTE = 60
+private const val QUESTIONS_PER_POLL = 50
+
+class ConditionalRequestInterceptorTest {
+
+    private lateinit var server: MockWebServer
+    private lateinit var interceptor: ConditionalRequestInterceptor
+    private lateinit var api: RockinAPI
+
+    @Before
+    fun setUp() {
+        server = MockWebServer()
+        server.start()
+        interceptor = ConditionalRequestInterceptor()
+        api = server.rockinApi(OkHttpClient.Builder().addInterceptor(interceptor).build())
+    }
+
+    @After
+    fun tearDown() {
+        server.shutdown()
+    }
+
+    private fun poll() = runBlocking { api.getPollSuspending(1, 2, "token", null) }
+
+    @Test
+    fun eTag_isSentBack_andNotModifiedBodyIsDropped() {
+        server.enqueue(MockResponse().setHeader("ETag", "\"v1\"").setBody(POLL))
+        server.enqueue(MockResponse().setResponseCode(HTTP_NOT_MODIFIED))
+
+        val responses = listOf(poll(), poll())
+
+        val first = server.takeRequest()
+        assertNull(first.getHeader("If-None-Match"))
+        assertNull(first.getHeader(CONDITIONAL_HEADER_NAME))
+        assertEquals("\"v1\"", server.takeRequest().getHeader("If-None-Match"))
+
+        val bodies = runBlocking { responses.asFlow().keepBody().toList() }
+        assertEquals(1, bodies.size)
+        assertEquals("Poll", bodies[0].title)
+        assertEquals(HTTP_NOT_MODIFIED, responses[1].code())
+        assertNull(responses[1].body())
+
+        assertEquals(1, interceptor.notModifiedCount.get())
+        assertEquals(POLL.length.toLong(), interceptor.savedBytes.get())
+    }
+
+    @Test
+    fun lastModified_isSentBack() {
+        server.enqueue(MockResponse().setHeader("Last-Modified", LAST_MODIFIED).setBody(POLL))
+        server.enqueue(MockResponse().setResponseCode(HTTP_NOT_MODIFIED))
+
+        poll()
+        poll()
+
+        assertNull(server.takeRequest().getHeader("If-Modified-Since"))
+        assertEquals(LAST_MODIFIED, server.takeRequest().getHeader("If-Modified-Since"))
+        assertEquals(1, interceptor.notModifiedCount.get())
+    }
+
+    @Test
+    fun changedResource_replacesValidators() {
+        server.enqueue(MockResponse().setHeader("ETag", "\"v1\"").setBody(POLL))
+        server.enqueue(MockResponse().setHeader("ETag", "\"v2\"").setBody(POLL))
+        server.enqueue(MockResponse().setResponseCode(HTTP_NOT_MODIFIED))
+
+        poll()
+        poll()
+        poll()
+
+        server.takeRequest()
+        assertEquals("\"v1\"", server.takeRequest().getHeader("If-None-Match"))
+        assertEquals("\"v2\"", server.takeRequest().getHeader("If-None-Match"))
+    }
+
+    @Test
+    fun errorResponse_forgetsValidators() {
+        server.enqueue(MockResponse().setHeader("ETag", "\"v1\"").setBody(POLL))
+        server.enqueue(MockResponse().setResponseCode(500))
+        server.enqueue(MockResponse().setBody(POLL))
+
+        poll()
+        poll()
+        poll()
+
+        server.takeRequest()
+        server.takeRequest()
+        assertNull(server.takeRequest().getHeader("If-None-Match"))
+    }
+
+    @Test
+    fun forget_removesValidatorsOfPath() {
+        server.enqueue(MockResponse().setHeader("ETag", "\"v1\"").setBody(POLL))
+        server.enqueue(MockResponse().setBody(POLL))
+
+        poll()
+        interceptor.forget("/mod/1/poll")
+        poll()
+
+        server.takeRequest()
+        assertNull(server.takeRequest().getHeader("If-None-Match"))
+    }
+
+    @Test
+    fun unmarkedRequests_areNotConditional() {
+        server.enqueue(MockResponse().setHeader("ETag", "\"v1\"").setBody("{}"))
+        server.enqueue(MockResponse().setBody("{}"))
+
+        runBlocking {
+            api.getSessionSuspending("token")
+            api.getSessionSuspending("token")
+        }
+
+        server.takeRequest()
+        assertNull(server.takeRequest().getHeader("If-None-Match"))
+        assertEquals(0, interceptor.notModifiedCount.get())
+    }
+
+    /**
+     * Polls an unchanged list of questions for a simulated minute, with and without validators,
+     * and reports the bytes downloaded and the time spent on the requests.
+     */
+    @Test
+    fun unchangedPoll_savesBodiesForAMinute() {
+        val body = questions(QUESTIONS_PER_POLL)
+
+        server.enqueue(MockResponse().setBody(body))
+        repeat(TICKS_PER_MINUTE) { server.enqueue(MockResponse().setBody(body)) }
+        val unconditional = measure(OkHttpClient(), TICKS_PER_MINUTE)
+
+        server.enqueue(MockResponse().setBody(body))
+        server.enqueue(MockResponse().setHeader("ETag", "\"v1\"").setBody(body))
+        repeat(TICKS_PER_MINUTE - 1) {
+            server.enqueue(MockResponse().setResponseCode(HTTP_NOT_MODIFIED))
+        }
+        val conditional = measure(OkHttpClient.Builder().addInterceptor(interceptor).build(), TICKS_PER_MINUTE)
+
+        assertEquals(TICKS_PER_MINUTE, unconditional.parsed)
+        assertEquals(1, conditional.parsed)
+        assertEquals(TICKS_PER_MINUTE - 1L, interceptor.notModifiedCount.get())
+        assertEquals((TICKS_PER_MINUTE - 1L) * body.length, interceptor.savedBytes.get())
+
+        println("Polling $QUESTIONS_PER_POLL questions for a minute :")
+        println("  unconditional : ${unconditional.bytes} bytes, ${unconditional.millis} ms")
+        println("  conditional   : ${conditional.bytes} bytes, ${conditional.millis} ms")
+    }
+
+    private class Measure(val parsed: Int, val bytes: Long, val millis: Long)
+
+    private fun measure(client: OkHttpClient, ticks: Int): Measure {
+        val measured = server.rockinApi(client)
+
+        // A first request warms up the connection and the adapters.
+        runBlocking { measured.getQuestionsSuspending(1, 2, "token", null) }
+
+        val start = System.nanoTime()
+        val responses = runBlocking {
+            List(ticks) { measured.getQuestionsSuspending(1, 2, "token", null) }
+        }
+        val millis = (System.nanoTime() - start) / 1_000_000
+
+        val successful = responses.filter { it.isSuccessful }
+        val bytes = successful.map { it.raw().body()?.contentLength() ?: 0 }.sum()
+        return Measure(successful.size, bytes, millis)
+    }
+
+    private fun questions(count: Int): String = (1..count).joinToString(",", "[", "]") {
+        """{"idModerator":1,"idPoll":2,"idQuestion":$it,"indexInPoll":$it.0,""" +
+                """"title":"Question $it","details":"Some details about question $it",""" +
+                """"answerMin":0,"answerMax":1}"""
+    }
+}
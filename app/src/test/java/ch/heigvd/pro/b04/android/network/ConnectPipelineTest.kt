@@ -0,0 +1,127 @@
+package ch.heigvd.pro.b04.android.network
+
+import kotlinx.coroutines.runBlocking
+import okhttp3.mockwebserver.Dispatcher
+import okhttp3.mockwebserver.MockResponse
+import okhttp3.mockwebserver.MockWebServer
+import okhttp3.mockwebserver.RecordedRequest
+import org.junit.After
+import org.junit.Assert.*
+import org.junit.Before
+import org.junit.Test
+import java.util.concurrent.CopyOnWriteArrayList
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+
+/**
+ * How long the server waits for the poll and the questions to be both requested, in seconds.
+ */
+private const val OVERLAP_TIMEOUT : Long = 2
+
+/**
+ * Runs the [ConnectPipeline] against a server that checks which requests are in flight together.
+ */
+class ConnectPipelineTest {
+
+    private lateinit var server: MockWebServer
+    private lateinit var api: RockinAPI
+
+    @Volatile
+    private var acceptedCode = "0x1234"
+
+    @Volatile
+    private var session = """{"idModerator":"1","idPoll":"2","idSession":"3","code":"0x1234","status":"open"}"""
+
+    /**
+     * Counts down as the poll and the questions are requested. Their responses are held until both
+     * have been requested, or until the timeout.
+     */
+    private val prefetches = CountDownLatch(2)
+
+    /**
+     * The paths of the prefetches whose request was received while the other one was in flight.
+     */
+    private val overlapping = CopyOnWriteArrayList<String>()
+
+    private fun prefetch(path: String, body: String): MockResponse {
+        prefetches.countDown()
+        if (prefetches.await(OVERLAP_TIMEOUT, TimeUnit.SECONDS)) overlapping += path
+        return MockResponse().setBody(body)
+    }
+
+    @Before
+    fun setUp() {
+        server = MockWebServer()
+        server.dispatcher = object : Dispatcher() {
+            override fun dispatch(request: RecordedRequest): MockResponse {
+                val path = request.path.substringBefore('?')
+                val token = request.requestUrl.queryParameter("token")
+                return when {
+                    path == "/connect" ->
+                        if (request.body.readUtf8().contains(acceptedCode)) MockResponse().setBody("""{"token":"token-${System.nanoTime()}"}""")
+                        else MockResponse().setResponseCode(404)
+                    path == "/session" -> MockResponse().setBody(session)
+                    path.endsWith("/question") -> prefetch(path, """[
+                        {"idModerator":1,"idPoll":2,"idQuestion":2,"indexInPoll":2.0,"title":"Second"},
+                        {"idModerator":1,"idPoll":2,"idQuestion":1,"indexInPoll":1.0,"title":"First"}
+                    ]""")
+                    path == "/mod/1/poll/2" -> prefetch(path, """{"idModerator":1,"idPoll":2,"title":"Poll of $token"}""")
+                    else -> MockResponse().setResponseCode(404)
+                }
+            }
+        }
+        server.start()
+        api = server.rockinApi()
+    }
+
+    @After
+    fun tearDown() {
+        server.shutdown()
+        SessionSnapshots.reset()
+    }
+
+    private fun connect(code: String = acceptedCode) = runBlocking { ConnectPipeline.connect(code, api) }
+
+    @Test
+    fun connect_fillsSnapshot() {
+        val result = connect()
+
+        assertTrue(result is ConnectResult.Connected)
+        val token = (result as ConnectResult.Connected).token
+        val snapshot = SessionSnapshots.get(token)
+        assertNotNull(snapshot)
+        assertEquals(1L, snapshot!!.idModerator)
+        assertEquals(2L, snapshot.idPoll)
+        assertEquals("Poll of $token", snapshot.poll?.title)
+        assertEquals(listOf("First", "Second"), snapshot.questions.map { it.title })
+    }
+
+    @Test
+    fun rejectedCode_fails() {
+        assertSame(ConnectResult.Failed, connect("0x0000"))
+    }
+
+    @Test
+    fun failedPrefetch_stillConnects() {
+        session = "{}"
+
+        val result = connect()
+
+        assertTrue(result is ConnectResult.Connected)
+        assertNull(SessionSnapshots.get((result as ConnectResult.Connected).token))
+    }
+
+    /**
+     * The session is needed to request the poll and the questions, which are then fetched
+     * concurrently rather than one after the other.
+     */
+    @Test
+    fun pollAndQuestions_areFetchedConcurrently() {
+        connect()
+
+        val paths = List(server.requestCount) { server.takeRequest().path.substringBefore('?') }
+        assertEquals(listOf("/connect", "/session"), paths.take(2))
+        assertEquals(setOf("/mod/1/poll/2", "/mod/1/poll/2/question"), paths.drop(2).toSet())
+        assertEquals(setOf("/mod/1/poll/2", "/mod/1/poll/2/question"), overlapping.toSet())
+    }
+}
@@ -0,0 +1,156 @@
+package ch.heigvd.pro.b04.android.network
+
+import okhttp3.OkHttpClient
+import okhttp3.Request
+import okhttp3.mockwebserver.Dispatcher
+import okhttp3.mockwebserver.MockResponse
+import okhttp3.mockwebserver.MockWebServer
+import okhttp3.mockwebserver.RecordedRequest
+import okhttp3.tls.HandshakeCertificates
+import okhttp3.tls.HeldCertificate
+import org.junit.After
+import org.junit.Assert.*
+import org.junit.Before
+import org.junit.Test
+
+/**
+ * The interval between two warmings in these tests, in milliseconds.
+ */
+private const val INTERVAL : Long = 60_000
+
+/**
+ * Checks that the [ConnectionWarmer] opens a TLS connection that the next request reuses, without
+ * touching the other connections of the pool.
+ */
+class ConnectionWarmerTest {
+
+    private lateinit var server: MockWebServer
+    private lateinit var clientCertificates: HandshakeCertificates
+
+    @Before
+    fun setUp() {
+        server = MockWebServer()
+        server.dispatcher = object : Dispatcher() {
+            override fun dispatch(request: RecordedRequest) = MockResponse().setBody("{}")
+        }
+        server.start()
+
+        val certificate = HeldCertificate.Builder()
+                .addSubjectAlternativeName(server.hostName)
+                .build()
+        val serverCertificates = HandshakeCertificates.Builder()
+                .heldCertificate(certificate)
+                .build()
+        clientCertificates = HandshakeCertificates.Builder()
+                .addTrustedCertificate(certificate.certificate())
+                .build()
+        server.useHttps(serverCertificates.sslSocketFactory(), false)
+    }
+
+    @After
+    fun tearDown() {
+        server.shutdown()
+    }
+
+    private fun warmer(interval: Long = INTERVAL) =
+            ConnectionWarmer(server.url("/"), interval) { System.nanoTime() / 1_000_000 }
+
+    /**
+     * Returns a new client, with its own connection pool, that uses the [warmer].
+     */
+    private fun client(warmer: ConnectionWarmer) = OkHttpClient.Builder()
+            .sslSocketFactory(clientCertificates.sslSocketFactory(), clientCertificates.trustManager())
+            .addInterceptor(warmer)
+            .build()
+
+    private fun OkHttpClient.get(path: String, on: MockWebServer = server) {
+        newCall(Request.Builder().url(on.url(path)).build()).execute().use {
+            assertTrue(it.isSuccessful)
+        }
+    }
+
+    /**
+     * Waits until the [condition] holds, for at most a few seconds.
+     */
+    private fun await(condition: () -> Boolean) {
+        val deadline = System.currentTimeMillis() + 5_000
+        while (!condition()) {
+            assertTrue("Timed out", System.currentTimeMillis() < deadline)
+            Thread.sleep(10)
+        }
+    }
+
+    private fun OkHttpClient.awaitIdleConnections(count: Int) =
+            await { connectionPool().idleConnectionCount() == count }
+
+    @Test
+    fun warmedConnection_isReused() {
+        val warmer = warmer()
+        val client = client(warmer)
+
+        warmer.warm(client)
+        client.awaitIdleConnections(1)
+        client.get("/poll")
+
+        val head = server.takeRequest()
+        val get = server.takeRequest()
+        assertEquals("HEAD", head.method)
+        assertEquals(0, head.sequenceNumber)
+        assertEquals(1, get.sequenceNumber)
+        assertNotNull(get.tlsVersion)
+        assertEquals(1, client.connectionPool().connectionCount())
+    }
+
+    @Test
+    fun recentWarming_isNotRepeated() {
+        val warmer = warmer()
+        val client = client(warmer)
+
+        warmer.warm(client)
+        client.awaitIdleConnections(1)
+        warmer.warm(client)
+        Thread.sleep(200)
+
+        assertEquals(1, server.requestCount)
+    }
+
+    @Test
+    fun recentRequest_skipsWarming() {
+        val warmer = warmer()
+        val client = client(warmer)
+
+        client.get("/poll")
+        warmer.warm(client)
+        Thread.sleep(200)
+
+        assertEquals(1, server.requestCount)
+        assertEquals("GET", server.takeRequest().method)
+    }
+
+    /**
+     * The warmed connection is left to the keep-alive of the pool, which also holds the connections
+     * of the other requests of the application.
+     */
+    @Test
+    fun warming_keepsOtherConnections() {
+        val other = MockWebServer()
+        other.enqueue(MockResponse().setBody("{}"))
+        other.start()
+        try {
+            val warmer = warmer(interval = 100)
+            val client = client(warmer)
+            client.get("/", on = other)
+            client.awaitIdleConnections(1)
+            // Otherwise the recent request would skip the warming.
+            Thread.sleep(200)
+
+            warmer.warm(client)
+            client.awaitIdleConnections(2)
+            Thread.sleep(300)
+
+            assertEquals(2, client.connectionPool().idleConnectionCount())
+        } finally {
+            other.shutdown()
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package ch.heigvd.pro.b04.android.network
+
+import kotlinx.coroutines.ExperimentalCoroutinesApi
+import kotlinx.coroutines.flow.first
+import kotlinx.coroutines.flow.toList
+import kotlinx.coroutines.runBlocking
+import kotlinx.coroutines.withTimeout
+import okhttp3.OkHttpClient
+import okhttp3.Response
+import okhttp3.WebSocket
+import okhttp3.WebSocketListener
+import okhttp3.mockwebserver.MockResponse
+import okhttp3.mockwebserver.MockWebServer
+import org.junit.After
+import org.junit.Assert.*
+import org.junit.Before
+import org.junit.Test
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+
+private const val TIMEOUT : Long = 5_000
+
+@ExperimentalCoroutinesApi
+class LiveUpdatesTest {
+
+    private lateinit var server: MockWebServer
+    private val client = OkHttpClient()
+
+    @Before
+    fun setUp() {
+        server = MockWebServer()
+        server.start()
+    }
+
+    @After
+    fun tearDown() {
+        server.shutdown()
+    }
+
+    private fun updates() = openLiveUpdates(client, server.url("/live"))
+
+    /**
+     * Upgrades the next request to a WebSocket that sends the provided messages, then closes.
+     */
+    private fun push(vararg messages: String) {
+        server.enqueue(MockResponse().withWebSocketUpgrade(object : WebSocketListener() {
+            override fun onOpen(webSocket: WebSocket, response: Response) {
+                messages.forEach { webSocket.send(it) }
+                webSocket.close(1000, null)
+            }
+        }))
+    }
+
+    @Test
+    fun pushedMessages_areParsed_untilServerCloses() {
+        push(
+                """{"type":"poll"}""",
+                """{"type":"questions"}""",
+                """{"type":"answers","idQuestion":4}"""
+        )
+
+        val updates = runBlocking { withTimeout(TIMEOUT) { updates().toList() } }
+
+        assertEquals(4, updates.size)
+        assertSame(LiveUpdate.Connected, updates[0])
+        assertSame(LiveUpdate.PollChanged, updates[1])
+        assertSame(LiveUpdate.QuestionsChanged, updates[2])
+        assertEquals(4L, (updates[3] as LiveUpdate.AnswersChanged).idQuestion)
+    }
+
+    @Test
+    fun unknownMessages_areIgnored() {
+        push(
+                """{"type":"unknown"}""",
+                """{"type":"answers"}""",
+                "not json",
+                """{"type":"poll"}"""
+        )
+
+        val updates = runBlocking { withTimeout(TIMEOUT) { updates().toList() } }
+
+        assertEquals(listOf(LiveUpdate.Connected, LiveUpdate.PollChanged), updates)
+    }
+
+    @Test(expected = Exception::class)
+    fun refusedUpgrade_failsFlow() {
+        server.enqueue(MockResponse().setResponseCode(404))
+
+        runBlocking { withTimeout(TIMEOUT) { updates().toList() } }
+    }
+
+    @Test
+    fun cancelledFlow_closesSocket() {
+        val closed = CountDownLatch(1)
+        server.enqueue(MockResponse().withWebSocketUpgrade(object : WebSocketListener() {
+            override fun onClosing(webSocket: WebSocket, code: Int, reason: String) {
+                closed.countDown()
+            }
+
+            override fun onFailure(webSocket: WebSocket, t: Throwable, response: Response?) {
+                closed.countDown()
+            }
+        }))
+
+        val first = runBlocking { withTimeout(TIMEOUT) { updates().first() } }
+
+        assertSame(LiveUpdate.Connected, first)
+        assertTrue(closed.await(TIMEOUT, TimeUnit.MILLISECONDS))
+    }
+}
@@ -0,0 +1,19 @@
+package ch.heigvd.pro.b04.android.network
+
+import okhttp3.OkHttpClient
+import okhttp3.mockwebserver.MockWebServer
+import retrofit2.Retrofit
+import retrofit2.converter.gson.GsonConverterFactory
+
+/**
+ * Creates a [RockinAPI] that targets this [MockWebServer], with the same converters as
+ * [Rockin.api] and the provided client.
+ */
+internal fun MockWebServer.rockinApi(client: OkHttpClient = OkHttpClient()): RockinAPI =
+        Retrofit.Builder()
+                .baseUrl(url("/"))
+                .client(client)
+                .addConverterFactory(CborConverterFactory(Rockin.gson))
+                .addConverterFactory(GsonConverterFactory.create(Rockin.gson))
+                .build()
+                .create(RockinAPI::class.java)
@@ -0,0 +1,130 @@
+package ch.heigvd.pro.b04.android.network
+
+import kotlinx.coroutines.ExperimentalCoroutinesApi
+import kotlinx.coroutines.delay
+import kotlinx.coroutines.flow.Flow
+import kotlinx.coroutines.flow.collect
+import kotlinx.coroutines.flow.flow
+import kotlinx.coroutines.launch
+import kotlinx.coroutines.test.TestCoroutineScope
+import kotlinx.coroutines.test.runBlockingTest
+import org.junit.Assert.assertEquals
+import org.junit.Test
+
+private const val TICK : Long = 1000
+private const val TICKS = 10
+private const val COLLECTORS = 8
+
+@ExperimentalCoroutinesApi
+class MulticastTest {
+
+    private var requests = 0
+    private var active = 0
+
+    /**
+     * A cold flow that makes one request per tick, like the polling of a resource.
+     */
+    private fun polling(): Flow<Int> = flow {
+        active += 1
+        try {
+            while (true) {
+                requests += 1
+                emit(requests)
+                delay(TICK)
+            }
+        } finally {
+            active -= 1
+        }
+    }
+
+    private fun TestCoroutineScope.collect(flow: Flow<Int>, into: MutableList<Int>) =
+            launch { flow.collect { into += it } }
+
+    @Test
+    fun collectors_shareOneRequestPerTick() = runBlockingTest {
+        val shared = polling().multicastIn(this)
+        val received = List(COLLECTORS) { mutableListOf<Int>() }
+        val jobs = received.map { collect(shared, it) }
+
+        advanceTimeBy(TICK * (TICKS - 1))
+
+        assertEquals(TICKS, requests)
+        assertEquals(1, active)
+        received.forEach { assertEquals((1..TICKS).toList(), it) }
+
+        jobs.forEach { it.cancel() }
+    }
+
+    @Test
+    fun collectors_areCounted() = runBlockingTest {
+        val shared = polling().multicastIn(this)
+        val jobs = List(COLLECTORS) { collect(shared, mutableListOf()) }
+
+        assertEquals(COLLECTORS, shared.collectors)
+
+        jobs.take(COLLECTORS / 2).forEach { it.cancel() }
+        runCurrent()
+        assertEquals(COLLECTORS - COLLECTORS / 2, shared.collectors)
+
+        jobs.forEach { it.cancel() }
+        runCurrent()
+        assertEquals(0, shared.collectors)
+    }
+
+    @Test
+    fun lateCollector_receivesLatestValue() = runBlockingTest {
+        val shared = polling().multicastIn(this)
+        val first = mutableListOf<Int>()
+        val late = mutableListOf<Int>()
+        val jobs = mutableListOf(collect(shared, first))
+
+        advanceTimeBy(TICK)
+        jobs += collect(shared, late)
+        advanceTimeBy(TICK)
+
+        assertEquals(3, requests)
+        assertEquals(listOf(1, 2, 3), first)
+        assertEquals(listOf(2, 3), late)
+
+        jobs.forEach { it.cancel() }
+    }
+
+    @Test
+    fun lateCollector_withoutReplay_receivesNextValue() = runBlockingTest {
+        val shared = polling().multicastIn(this, replayLatest = false)
+        val first = mutableListOf<Int>()
+        val late = mutableListOf<Int>()
+        val jobs = mutableListOf(collect(shared, first))
+
+        advanceTimeBy(TICK)
+        jobs += collect(shared, late)
+        advanceTimeBy(TICK)
+
+        assertEquals(listOf(1, 2, 3), first)
+        assertEquals(listOf(3), late)
+
+        jobs.forEach { it.cancel() }
+    }
+
+    @Test
+    fun upstream_isCancelledWithLastCollector_andRestarted() = runBlockingTest {
+        val shared = polling().multicastIn(this)
+        val jobs = List(COLLECTORS) { collect(shared, mutableListOf()) }
+        advanceTimeBy(TICK)
+
+        jobs.drop(1).forEach { it.cancel() }
+        assertEquals(1, active)
+
+        jobs.first().cancel()
+        assertEquals(0, active)
+
+        // No request is made while nobody collects.
+        advanceTimeBy(TICK * TICKS)
+        assertEquals(2, requests)
+
+        val again = collect(shared, mutableListOf())
+        assertEquals(1, active)
+        assertEquals(3, requests)
+        again.cancel()
+    }
+}
@@ -0,0 +1,128 @@
+package ch.heigvd.pro.b04.android.network
+
+import kotlinx.coroutines.async
+import kotlinx.coroutines.awaitAll
+import kotlinx.coroutines.runBlocking
+import okhttp3.ConnectionPool
+import okhttp3.Interceptor
+import okhttp3.mockwebserver.Dispatcher
+import okhttp3.mockwebserver.MockResponse
+import okhttp3.mockwebserver.MockWebServer
+import okhttp3.mockwebserver.RecordedRequest
+import org.junit.After
+import org.junit.Assert.*
+import org.junit.Before
+import org.junit.BeforeClass
+import org.junit.Test
+import java.util.concurrent.TimeUnit
+
+private const val TICKS = 10
+
+/**
+ * Checks that the polling loops reuse the pooled connections of [Rockin.client], rather than
+ * opening a new connection for each request.
+ */
+class RockinClientTest {
+
+    companion object {
+        @BeforeClass
+        @JvmStatic
+        fun useSystemTime() {
+            // The local unit tests do not provide the SystemClock.
+            Rockin.clock = { System.nanoTime() / 1_000_000 }
+        }
+    }
+
+    private lateinit var server: MockWebServer
+
+    @Before
+    fun setUp() {
+        server = MockWebServer()
+        server.dispatcher = object : Dispatcher() {
+            override fun dispatch(request: RecordedRequest): MockResponse = when {
+                request.path.contains("/answer") -> MockResponse().setBody("[]")
+                request.path.contains("/question") -> MockResponse().setBody("[]")
+                else -> MockResponse().setBody("""{"idModerator":1,"idPoll":2,"title":"Poll"}""")
+            }
+        }
+        server.start()
+        Rockin.client.connectionPool().evictAll()
+    }
+
+    @After
+    fun tearDown() {
+        server.shutdown()
+    }
+
+    /**
+     * Runs [TICKS] ticks of the poll, questions and answers loops, and returns the requests
+     * received by the server.
+     */
+    private fun poll(api: RockinAPI, concurrent: Boolean): List<RecordedRequest> {
+        val received = server.requestCount
+        repeat(TICKS) {
+            runBlocking {
+                val requests = listOf(
+                        suspend { api.getPollSuspending(1, 2, "token", null) },
+                        suspend { api.getQuestionsSuspending(1, 2, "token", null) },
+                        suspend { api.getAnswersSuspending(1, 2, 3, "token", null) }
+                )
+                if (concurrent) {
+                    requests.map { async { it() } }.awaitAll()
+                } else {
+                    requests.forEach { it() }
+                }
+            }
+        }
+        return List(server.requestCount - received) { server.takeRequest() }
+    }
+
+    /**
+     * Returns the number of connections that were opened for the requests.
+     */
+    private fun connections(requests: List<RecordedRequest>) = requests.count { it.sequenceNumber == 0 }
+
+    @Test
+    fun sequentialRequests_reuseOneConnection() {
+        val requests = poll(server.rockinApi(Rockin.client), concurrent = false)
+
+        assertEquals(3 * TICKS, requests.size)
+        assertEquals((0 until 3 * TICKS).toList(), requests.map { it.sequenceNumber })
+    }
+
+    @Test
+    fun concurrentLoops_reusePooledConnections() {
+        val pooled = connections(poll(server.rockinApi(Rockin.client), concurrent = true))
+        val unpooled = connections(poll(server.rockinApi(Rockin.client.newBuilder()
+                .connectionPool(ConnectionPool(0, 1, TimeUnit.SECONDS))
+                .build()), concurrent = true))
+
+        assertTrue(pooled <= 3)
+        assertEquals(3 * TICKS, unpooled)
+    }
+
+    @Test
+    fun liveClient_sharesPoolAndDispatcher() {
+        assertSame(Rockin.client.connectionPool(), Rockin.liveClient.connectionPool())
+        assertSame(Rockin.client.dispatcher(), Rockin.liveClient.dispatcher())
+        assertEquals(0, Rockin.liveClient.readTimeoutMillis())
+    }
+
+    /**
+     * The configuration of the shared client is read when it is built, so it may not change later.
+     */
+    @Test
+    fun configurationOfBuiltClient_isRejected() {
+        Rockin.client
+
+        assertThrows(IllegalStateException::class.java) {
+            Rockin.addInterceptor(Interceptor { it.proceed(it.request()) })
+        }
+        assertThrows(IllegalStateException::class.java) {
+            Rockin.addNetworkInterceptor(Interceptor { it.proceed(it.request()) })
+        }
+        assertThrows(IllegalStateException::class.java) {
+            Rockin.clock = { 0 }
+        }
+    }
+}
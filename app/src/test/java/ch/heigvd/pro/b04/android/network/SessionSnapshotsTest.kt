@@ -0,0 +1,68 @@
+package ch.heigvd.pro.b04.android.network
+
+import ch.heigvd.pro.b04.android.datamodel.question
+import kotlinx.coroutines.runBlocking
+import org.junit.After
+import org.junit.Assert.*
+import org.junit.Before
+import org.junit.Rule
+import org.junit.Test
+import org.junit.rules.TemporaryFolder
+import java.io.File
+
+/**
+ * Checks that the snapshot stored by a previous process is only restored if nothing changed the
+ * snapshot while it was being read.
+ */
+class SessionSnapshotsTest {
+
+    @get:Rule
+    val folder = TemporaryFolder()
+
+    private lateinit var file: File
+
+    private val stored = SessionSnapshot("stored", 1, 2, null, listOf(question(1)), emptyMap())
+
+    @Before
+    fun setUp() {
+        file = File(folder.root, "snapshot.json")
+        file.writeText(Rockin.gson.toJson(stored))
+    }
+
+    @After
+    fun tearDown() {
+        SessionSnapshots.reset()
+    }
+
+    @Test
+    fun storedSnapshot_isLoaded() {
+        SessionSnapshots.initialize(file)
+
+        val loaded = runBlocking { SessionSnapshots.await("stored") }
+
+        assertEquals(listOf(1L), loaded?.questions?.map { it.idQuestion })
+    }
+
+    @Test
+    fun updateDuringStartup_isKept() {
+        SessionSnapshots.update("entered", 1, 2) { it.copy(questions = listOf(question(2))) }
+        SessionSnapshots.initialize(file)
+
+        runBlocking {
+            assertNull(SessionSnapshots.await("stored"))
+            assertEquals(listOf(2L), SessionSnapshots.await("entered")?.questions?.map { it.idQuestion })
+        }
+    }
+
+    /**
+     * A participant who logs out while the application starts must not find the snapshot of the
+     * session they left.
+     */
+    @Test
+    fun clearDuringStartup_discardsStoredSnapshot() {
+        SessionSnapshots.clear()
+        SessionSnapshots.initialize(file)
+
+        assertNull(runBlocking { SessionSnapshots.await("stored") })
+    }
+}
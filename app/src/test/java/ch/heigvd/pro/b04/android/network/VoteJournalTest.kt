@@ -0,0 +1,102 @@
+package ch.heigvd.pro.b04.android.network
+
+import ch.heigvd.pro.b04.android.datamodel.answer
+import kotlinx.coroutines.*
+import org.junit.Assert.*
+import org.junit.Rule
+import org.junit.Test
+import org.junit.rules.TemporaryFolder
+import java.io.File
+import java.util.concurrent.Callable
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+
+private const val PENDING = 70
+private const val VOTES = 200
+
+@ExperimentalCoroutinesApi
+class VoteJournalTest {
+
+    @get:Rule
+    val folder = TemporaryFolder()
+
+    private val file by lazy { File(folder.root, "votes.journal") }
+
+    private fun records() = if (file.exists()) file.readLines().size else 0
+
+    @Test
+    fun acknowledgedVotes_areCompactedAway() {
+        val journal = VoteJournal(file)
+
+        runBlocking {
+            val vote = journal.append(answer(1, 1, checked = true), "token")
+            assertEquals(1, records())
+            journal.acknowledge(vote)
+        }
+
+        assertFalse(file.exists())
+    }
+
+    /**
+     * While more votes stay pending than the compaction threshold, the journal is only compacted
+     * once enough records have been appended since the last compaction, rather than on every
+     * acknowledgement.
+     */
+    @Test
+    fun pendingVotes_doNotCompactOnEveryAcknowledgement() {
+        val journal = VoteJournal(file)
+        var compactions = 0
+        var previous = 0
+
+        fun observe() {
+            val current = records()
+            if (current < previous) compactions += 1
+            previous = current
+        }
+
+        runBlocking {
+            repeat(PENDING) {
+                journal.append(answer(1, it.toLong(), checked = true), "token")
+                observe()
+            }
+            repeat(VOTES) {
+                val vote = journal.append(answer(2, it.toLong(), checked = true), "token")
+                observe()
+                journal.acknowledge(vote)
+                observe()
+            }
+        }
+
+        // Each vote appends two records, so the journal is compacted about every 32 votes, and not
+        // on every acknowledgement once it holds more pending votes than the threshold.
+        assertTrue(compactions in 2 * VOTES / 64..2 * VOTES / 64 + 2)
+        val kept = file.readLines().filter { it.contains("\"idQuestion\":1,") }
+        assertEquals(PENDING, kept.size)
+    }
+
+    /**
+     * The journal is written on its own threads, so that the event loop which submits the votes
+     * keeps processing its events while the journal is busy.
+     */
+    @Test
+    fun append_releasesCallerThread() {
+        val journal = VoteJournal(file)
+        val executor = Executors.newSingleThreadExecutor()
+        try {
+            val caller = executor.asCoroutineDispatcher()
+            val append = synchronized(journal) {
+                val append = CoroutineScope(caller).async {
+                    journal.append(answer(1, 1, checked = true), "token")
+                }
+                // Queued after the append, so it only runs if the append does not block the caller.
+                val probe = executor.submit(Callable { true })
+                assertTrue(runCatching { probe.get(1, TimeUnit.SECONDS) }.getOrDefault(false))
+                append
+            }
+            runBlocking { append.await() }
+            assertEquals(1, records())
+        } finally {
+            executor.shutdown()
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package ch.heigvd.pro.b04.android.poll
+
+import android.content.Context
+import android.content.Intent
+import android.os.Looper
+import androidx.test.core.app.ActivityScenario
+import androidx.test.core.app.ApplicationProvider
+import ch.heigvd.pro.b04.android.authentication.AuthenticationTokenLiveData
+import ch.heigvd.pro.b04.android.network.PollRepository
+import kotlinx.coroutines.ExperimentalCoroutinesApi
+import kotlinx.coroutines.FlowPreview
+import org.junit.After
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Before
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.robolectric.RobolectricTestRunner
+import org.robolectric.Shadows.shadowOf
+import org.robolectric.annotation.Config
+
+private const val ID_MODERATOR = 1
+private const val ID_POLL = 2
+private const val TOKEN = "token"
+private const val RECREATIONS = 50
+
+/**
+ * The poll, the questions and the network errors, each collected once by the activity.
+ */
+private const val COLLECTORS = 3
+
+/**
+ * Recreates the poll activity many times, like on rotations, and checks that the number of
+ * collectors of the shared flows of the poll stays constant : the destroyed activities must not
+ * leave their collectors behind.
+ */
+@FlowPreview
+@ExperimentalCoroutinesApi
+@RunWith(RobolectricTestRunner::class)
+@Config(sdk = [28])
+class CollectorSoakTest {
+
+    private val context: Context = ApplicationProvider.getApplicationContext()
+
+    private lateinit var repository: PollRepository
+
+    @Before
+    fun setUp() {
+        // The activity quits if no participant is logged in.
+        AuthenticationTokenLiveData.getInstance().login(TOKEN)
+        repository = PollRepository.acquire(ID_MODERATOR.toLong(), ID_POLL.toLong(), TOKEN)
+    }
+
+    @After
+    fun tearDown() {
+        repository.release()
+        AuthenticationTokenLiveData.getInstance().logout()
+    }
+
+    /**
+     * Runs the main [Looper] until the [condition] on the collectors holds, while they are started
+     * and cancelled.
+     */
+    private fun await(condition: () -> Boolean) {
+        val deadline = System.currentTimeMillis() + 5_000
+        while (!condition()) {
+            assertTrue("Timed out with ${repository.collectors} collectors",
+                    System.currentTimeMillis() < deadline)
+            shadowOf(Looper.getMainLooper()).idle()
+            Thread.sleep(1)
+        }
+    }
+
+    private fun intent() = Intent(context, PollActivity::class.java)
+            .putExtra(PollActivity.EXTRA_ID_MODERATOR, ID_MODERATOR)
+            .putExtra(PollActivity.EXTRA_ID_POLL, ID_POLL)
+            .putExtra(PollActivity.EXTRA_TOKEN, TOKEN)
+
+    @Test
+    fun recreatedActivity_keepsTheSameCollectors() {
+        ActivityScenario.launch<PollActivity>(intent()).use { scenario ->
+            await { repository.collectors == COLLECTORS }
+
+            repeat(RECREATIONS) {
+                scenario.recreate()
+
+                await { repository.collectors == COLLECTORS }
+                shadowOf(Looper.getMainLooper()).idle()
+                assertEquals(COLLECTORS, repository.collectors)
+            }
+        }
+        await { repository.collectors == 0 }
+    }
+}
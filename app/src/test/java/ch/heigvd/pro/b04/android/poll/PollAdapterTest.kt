@@ -0,0 +1,93 @@
+package ch.heigvd.pro.b04.android.poll
+
+import android.content.Context
+import android.widget.Button
+import android.widget.FrameLayout
+import androidx.recyclerview.widget.LinearLayoutManager
+import androidx.recyclerview.widget.RecyclerView
+import androidx.test.core.app.ApplicationProvider
+import ch.heigvd.pro.b04.android.R
+import ch.heigvd.pro.b04.android.datamodel.Question
+import ch.heigvd.pro.b04.android.datamodel.question
+import ch.heigvd.pro.b04.android.question.Notification
+import ch.heigvd.pro.b04.android.question.RecordingObserver
+import ch.heigvd.pro.b04.android.question.layoutAll
+import ch.heigvd.pro.b04.android.question.runOnMain
+import org.junit.After
+import org.junit.Assert.*
+import org.junit.Before
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.robolectric.RobolectricTestRunner
+import org.robolectric.annotation.Config
+
+/**
+ * Checks that refreshing the questions of a poll only rebinds the rows that changed.
+ */
+@RunWith(RobolectricTestRunner::class)
+@Config(sdk = [28])
+class PollAdapterTest {
+
+    private val context: Context = ApplicationProvider.getApplicationContext()
+    private val selected = mutableListOf<Question>()
+    private val observer = RecordingObserver()
+
+    private lateinit var adapter: PollAdapter
+    private lateinit var list: RecyclerView
+
+    @Before
+    fun setUp() {
+        adapter = PollAdapter(context) { selected += it }
+        list = RecyclerView(context).apply {
+            layoutManager = LinearLayoutManager(context)
+            itemAnimator = null
+            adapter = this@PollAdapterTest.adapter
+        }
+        FrameLayout(context).addView(list)
+        adapter.registerAdapterDataObserver(observer)
+    }
+
+    @After
+    fun tearDown() {
+        adapter.unregisterAdapterDataObserver(observer)
+    }
+
+    private fun submit(questions: List<Question>) {
+        runOnMain { adapter.submitQuestions(questions) }
+        list.layoutAll()
+    }
+
+    private fun button(position: Int): Button =
+            list.findViewHolderForAdapterPosition(position)!!.itemView.findViewById(R.id.poll_question_item)
+
+    @Test
+    fun unchangedRefresh_rebindsNothing() {
+        submit((1L..3L).map { question(it) })
+        observer.notifications.clear()
+
+        repeat(10) { submit((1L..3L).map { question(it) }) }
+
+        assertEquals(emptyList<Notification>(), observer.notifications)
+    }
+
+    @Test
+    fun reorderedQuestion_isMoved() {
+        submit((1L..3L).map { question(it) })
+        observer.notifications.clear()
+
+        submit(listOf(question(2), question(3), question(1, indexInPoll = 4.0)))
+
+        assertTrue(observer.notifications.none { it.kind == "inserted" || it.kind == "removed" })
+        assertTrue(observer.notifications.any { it.kind == "moved" })
+        assertTrue(button(4).text.startsWith("Question 1"))
+    }
+
+    @Test
+    fun click_selectsQuestion() {
+        submit((1L..3L).map { question(it) })
+
+        button(3).performClick()
+
+        assertEquals(listOf(2L), selected.map { it.idQuestion })
+    }
+}
@@ -0,0 +1,298 @@
+package ch.heigvd.pro.b04.android.question
+
+import ch.heigvd.pro.b04.android.datamodel.Answer
+import ch.heigvd.pro.b04.android.datamodel.Poll
+import ch.heigvd.pro.b04.android.datamodel.Question
+import ch.heigvd.pro.b04.android.datamodel.answer
+import ch.heigvd.pro.b04.android.datamodel.question
+import ch.heigvd.pro.b04.android.network.NetworkError
+import ch.heigvd.pro.b04.android.network.PollSource
+import ch.heigvd.pro.b04.android.network.VoteResult
+import kotlinx.coroutines.*
+import kotlinx.coroutines.channels.BroadcastChannel
+import kotlinx.coroutines.channels.Channel
+import kotlinx.coroutines.flow.*
+import kotlinx.coroutines.test.TestCoroutineDispatcher
+import org.junit.After
+import org.junit.Assert.*
+import org.junit.Test
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.CopyOnWriteArrayList
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+
+/**
+ * A [PollSource] whose data is pushed by the tests, and which records the calls it receives.
+ */
+private class FakePollSource : PollSource {
+
+    val pushedQuestions = MutableStateFlow<List<Question>?>(null)
+    val pushedErrors = BroadcastChannel<NetworkError>(Channel.BUFFERED)
+    val pushedResults = BroadcastChannel<VoteResult>(Channel.BUFFERED)
+    private val pushedAnswers = ConcurrentHashMap<Long, MutableStateFlow<List<Answer>?>>()
+
+    val requestedAnswers: MutableList<Long> = CopyOnWriteArrayList()
+    val submitted: MutableList<Answer> = CopyOnWriteArrayList()
+    val threads: MutableList<Thread> = CopyOnWriteArrayList()
+
+    @Volatile
+    var refreshes = 0
+
+    fun pushAnswers(idQuestion: Long, answers: List<Answer>) {
+        pushedAnswers.getOrPut(idQuestion) { MutableStateFlow(null) }.value = answers
+    }
+
+    private fun <T> Flow<T>.recorded() = onEach { threads += Thread.currentThread() }
+
+    override val questions: Flow<List<Question>> = pushedQuestions.filterNotNull().recorded()
+
+    override val networkErrors: Flow<NetworkError> = pushedErrors.asFlow().recorded()
+
+    override val voteResults: Flow<VoteResult> = pushedResults.asFlow().recorded()
+
+    override fun answers(question: Question): Flow<List<Answer>> {
+        requestedAnswers += question.idQuestion
+        threads += Thread.currentThread()
+        return pushedAnswers.getOrPut(question.idQuestion) { MutableStateFlow(null) }
+                .filterNotNull()
+                .recorded()
+    }
+
+    override suspend fun submit(answer: Answer) {
+        threads += Thread.currentThread()
+        submitted += answer
+    }
+
+    override fun refresh() {
+        threads += Thread.currentThread()
+        refreshes += 1
+    }
+}
+
+@FlowPreview
+@ExperimentalCoroutinesApi
+class PollStateTest {
+
+    private val dispatcher = TestCoroutineDispatcher()
+    private val job = SupervisorJob()
+    private val scope = CoroutineScope(job + dispatcher)
+    private val source = FakePollSource()
+
+    private val actions = UserActions()
+
+    private val first = question(1, answerMax = 1)
+    private val second = question(2, answerMax = 2)
+
+    @After
+    fun tearDown() {
+        job.cancel()
+        dispatcher.cleanupTestCoroutines()
+    }
+
+    private fun state(opened: Question = first, loop: CoroutineDispatcher = dispatcher) = PollState(
+            scope,
+            source,
+            Poll(1, 2),
+            opened,
+            "token",
+            actions.moveToNext,
+            actions.moveToPrevious,
+            actions.votes,
+            loop
+    )
+
+    private fun <T> Flow<T>.values(): List<T> {
+        val values = CopyOnWriteArrayList<T>()
+        scope.launch { collect { values += it } }
+        return values
+    }
+
+    @Test
+    fun questions_enableNavigation() {
+        val state = state()
+        val next = state.nextButtonVisible.values()
+        val previous = state.previousButtonVisible.values()
+
+        source.pushedQuestions.value = listOf(first, second)
+
+        assertEquals(listOf(false, true), next)
+        assertEquals(listOf(false), previous)
+    }
+
+    @Test
+    fun moveToNext_changesQuestion_andObservesItsAnswers() {
+        val state = state()
+        val questions = state.currentQuestion.values()
+        source.pushedQuestions.value = listOf(first, second)
+        source.pushAnswers(2, listOf(answer(2, 20), answer(2, 21)))
+        val refreshes = source.refreshes
+
+        actions.next()
+
+        assertEquals(listOf(1L, 2L), questions.map { it.idQuestion })
+        assertEquals(listOf(1L, 2L), source.requestedAnswers)
+        assertEquals(refreshes + 1, source.refreshes)
+    }
+
+    /**
+     * The questions are already known when a question is opened, since they are replayed by the
+     * shared repository : the navigation actions must not be replayed along with them.
+     */
+    @Test
+    fun openingLastQuestion_staysOnIt() {
+        source.pushedQuestions.value = listOf(first, second)
+        val state = state(opened = second)
+        val questions = state.currentQuestion.values()
+
+        assertEquals(listOf(2L), questions.map { it.idQuestion })
+        assertEquals(listOf(2L), source.requestedAnswers)
+    }
+
+    @Test
+    fun openingQuestion_fetchesOnlyItsAnswers() {
+        source.pushedQuestions.value = listOf(first, second, question(3))
+        val state = state(opened = second)
+        val questions = state.currentQuestion.values()
+
+        assertEquals(listOf(2L), questions.map { it.idQuestion })
+        assertEquals(listOf(2L), source.requestedAnswers)
+        assertEquals(0, source.refreshes)
+    }
+
+    @Test
+    fun moveToNext_withoutNextQuestion_doesNothing() {
+        val state = state()
+        val questions = state.currentQuestion.values()
+        source.pushedQuestions.value = listOf(first)
+
+        actions.next()
+
+        assertEquals(listOf(1L), questions.map { it.idQuestion })
+    }
+
+    @Test
+    fun vote_isAppliedLocally_andSubmitted() {
+        val state = state()
+        val answers = state.currentAnswers.values()
+        source.pushedQuestions.value = listOf(first)
+        source.pushAnswers(1, listOf(answer(1, 10), answer(1, 11)))
+
+        actions.vote(answer(1, 11))
+
+        assertEquals(listOf(false, true), answers.last().map { it.isChecked })
+        assertEquals(1, source.submitted.size)
+        assertEquals(11L, source.submitted[0].idAnswer)
+        assertTrue(source.submitted[0].isChecked)
+    }
+
+    @Test
+    fun serverValues_doNotOverwriteRecentVote() {
+        val state = state()
+        val answers = state.currentAnswers.values()
+        source.pushedQuestions.value = listOf(first)
+        source.pushAnswers(1, listOf(answer(1, 10), answer(1, 11)))
+        actions.vote(answer(1, 10))
+
+        source.pushAnswers(1, listOf(answer(1, 10), answer(1, 11), answer(1, 12)))
+
+        assertEquals(listOf(10L, 11L, 12L), answers.last().map { it.idAnswer })
+        assertTrue(answers.last()[0].isChecked)
+    }
+
+    @Test
+    fun voteAboveMaximum_isRejected() {
+        val state = state()
+        val rejections = state.tooManyAnswers.values()
+        source.pushedQuestions.value = listOf(first, second)
+        source.pushAnswers(1, listOf(answer(1, 10, checked = true), answer(1, 11)))
+
+        actions.vote(answer(1, 11))
+
+        assertEquals(listOf(1), rejections)
+        assertTrue(source.submitted.isEmpty())
+    }
+
+    @Test
+    fun rejection_reportsMaximumOfCurrentQuestion() {
+        val state = state()
+        val rejections = state.tooManyAnswers.values()
+        source.pushedQuestions.value = listOf(first, second)
+        source.pushAnswers(1, listOf(answer(1, 10, checked = true), answer(1, 11)))
+        source.pushAnswers(2, listOf(
+                answer(2, 20, checked = true),
+                answer(2, 21, checked = true),
+                answer(2, 22)
+        ))
+
+        actions.vote(answer(1, 11))
+        actions.next()
+        actions.vote(answer(2, 22))
+
+        assertEquals(listOf(1, 2), rejections)
+    }
+
+    @Test
+    fun failedVote_isReverted_andRefreshed() {
+        val state = state()
+        val answers = state.currentAnswers.values()
+        source.pushedQuestions.value = listOf(first)
+        source.pushAnswers(1, listOf(answer(1, 10)))
+        actions.vote(answer(1, 10))
+        val refreshes = source.refreshes
+
+        source.pushedResults.offer(VoteResult.Failed(source.submitted[0], 403))
+
+        assertFalse(answers.last()[0].isChecked)
+        assertEquals(refreshes + 1, source.refreshes)
+    }
+
+    @Test
+    fun removedQuestions_areDropped() {
+        val state = state()
+        val next = state.nextButtonVisible.values()
+        source.pushedQuestions.value = listOf(first, second)
+
+        source.pushedQuestions.value = listOf(first)
+
+        assertEquals(listOf(false, true, false), next)
+    }
+
+    /**
+     * Runs the event loop on its own single thread, and checks that the upstream [Flow]s, the
+     * reducer and its effects never run on the thread of the collectors, which stands for the
+     * main thread.
+     */
+    @Test
+    fun eventLoop_isConfinedToItsDispatcher() {
+        val executor = Executors.newSingleThreadExecutor { Thread(it, "PollStateTest") }
+        val loop = executor.asCoroutineDispatcher()
+        try {
+            val state = state(loop = loop)
+            val main = Thread.currentThread()
+            val answers = runBlocking {
+                val collected = async { state.currentAnswers.first { it.isNotEmpty() } }
+                source.pushedQuestions.value = listOf(first, second)
+                source.pushAnswers(1, listOf(answer(1, 10), answer(1, 11)))
+                withTimeout(5_000) { collected.await() }
+            }
+            runBlocking {
+                actions.vote(answer(1, 11))
+                actions.next()
+                withTimeout(5_000) { state.currentQuestion.first { it.idQuestion == 2L } }
+            }
+            runBlocking { withContext(loop) { } }
+
+            assertEquals(2, answers.size)
+            assertEquals(1, source.submitted.size)
+            assertTrue(source.threads.isNotEmpty())
+            source.threads.forEach {
+                assertNotSame(main, it)
+                assertEquals("PollStateTest", it.name)
+            }
+        } finally {
+            job.cancel()
+            executor.shutdown()
+            executor.awaitTermination(5, TimeUnit.SECONDS)
+        }
+    }
+}
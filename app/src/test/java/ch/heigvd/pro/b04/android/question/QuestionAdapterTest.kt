@@ -0,0 +1,191 @@
+package ch.heigvd.pro.b04.android.question
+
+import android.content.Context
+import android.graphics.drawable.ColorDrawable
+import android.os.Handler
+import android.os.Looper
+import android.view.View
+import android.widget.Button
+import android.widget.FrameLayout
+import androidx.recyclerview.widget.LinearLayoutManager
+import androidx.recyclerview.widget.RecyclerView
+import androidx.test.core.app.ApplicationProvider
+import ch.heigvd.pro.b04.android.R
+import ch.heigvd.pro.b04.android.datamodel.Answer
+import ch.heigvd.pro.b04.android.datamodel.answer
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.android.asCoroutineDispatcher
+import kotlinx.coroutines.cancel
+import kotlinx.coroutines.launch
+import org.junit.After
+import org.junit.Assert.*
+import org.junit.Before
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.robolectric.RobolectricTestRunner
+import org.robolectric.Shadows.shadowOf
+import org.robolectric.annotation.Config
+
+/**
+ * A notification received by a [RecyclerView.AdapterDataObserver].
+ */
+internal data class Notification(val kind: String, val position: Int, val count: Int, val payload: Any? = null)
+
+/**
+ * Records the notifications of an adapter, each of which makes the [RecyclerView] rebind or
+ * relayout some rows.
+ */
+internal class RecordingObserver : RecyclerView.AdapterDataObserver() {
+
+    val notifications = mutableListOf<Notification>()
+
+    override fun onChanged() {
+        notifications += Notification("all", 0, 0)
+    }
+
+    override fun onItemRangeChanged(positionStart: Int, itemCount: Int, payload: Any?) {
+        notifications += Notification("changed", positionStart, itemCount, payload)
+    }
+
+    override fun onItemRangeInserted(positionStart: Int, itemCount: Int) {
+        notifications += Notification("inserted", positionStart, itemCount)
+    }
+
+    override fun onItemRangeRemoved(positionStart: Int, itemCount: Int) {
+        notifications += Notification("removed", positionStart, itemCount)
+    }
+
+    override fun onItemRangeMoved(fromPosition: Int, toPosition: Int, itemCount: Int) {
+        notifications += Notification("moved", fromPosition, toPosition)
+    }
+}
+
+/**
+ * Runs the main [Looper] until the [block] completes, while the lists are diffed in the
+ * background.
+ */
+internal fun runOnMain(block: suspend () -> Unit) {
+    val scope = CoroutineScope(Handler(Looper.getMainLooper()).asCoroutineDispatcher())
+    try {
+        val job = scope.launch { block() }
+        val deadline = System.currentTimeMillis() + 5_000
+        while (!job.isCompleted) {
+            assertTrue("Timed out", System.currentTimeMillis() < deadline)
+            shadowOf(Looper.getMainLooper()).idle()
+            Thread.sleep(1)
+        }
+    } finally {
+        scope.cancel()
+    }
+}
+
+/**
+ * Lays out the [RecyclerView] on a large screen, so that all its rows are bound.
+ */
+internal fun RecyclerView.layoutAll() {
+    measure(
+            View.MeasureSpec.makeMeasureSpec(1080, View.MeasureSpec.EXACTLY),
+            View.MeasureSpec.makeMeasureSpec(10_000, View.MeasureSpec.EXACTLY)
+    )
+    layout(0, 0, 1080, 10_000)
+}
+
+/**
+ * Checks that refreshing the answers of a question only rebinds the rows that changed.
+ */
+@RunWith(RobolectricTestRunner::class)
+@Config(sdk = [28])
+class QuestionAdapterTest {
+
+    private val context: Context = ApplicationProvider.getApplicationContext()
+    private val selected = mutableListOf<Answer>()
+    private val observer = RecordingObserver()
+
+    private lateinit var adapter: QuestionAdapter
+    private lateinit var list: RecyclerView
+
+    @Before
+    fun setUp() {
+        adapter = QuestionAdapter(context) { selected += it }
+        list = RecyclerView(context).apply {
+            layoutManager = LinearLayoutManager(context)
+            itemAnimator = null
+            adapter = this@QuestionAdapterTest.adapter
+        }
+        FrameLayout(context).addView(list)
+        adapter.registerAdapterDataObserver(observer)
+    }
+
+    @After
+    fun tearDown() {
+        adapter.unregisterAdapterDataObserver(observer)
+    }
+
+    private fun submit(answers: List<Answer>) {
+        runOnMain { adapter.submitAnswers(answers) }
+        list.layoutAll()
+    }
+
+    private fun answers(vararg checked: Long) = (1L..3L).map { answer(1, it, checked = it in checked) }
+
+    private fun button(position: Int): Button =
+            list.findViewHolderForAdapterPosition(position)!!.itemView.findViewById(R.id.question_answer_item)
+
+    @Test
+    fun firstList_insertsItsRows() {
+        submit(answers())
+
+        assertEquals(listOf(Notification("inserted", 1, 3)), observer.notifications)
+        assertEquals(4, adapter.itemCount)
+        assertTrue(button(1).text.startsWith("Answer 1"))
+    }
+
+    @Test
+    fun unchangedRefresh_rebindsNothing() {
+        submit(answers(2))
+        observer.notifications.clear()
+
+        // Every tick of the polling loop parses new, equal instances.
+        repeat(10) { submit(answers(2)) }
+
+        assertEquals(emptyList<Notification>(), observer.notifications)
+    }
+
+    @Test
+    fun toggledAnswer_onlyRecoloursItsRow() {
+        submit(answers())
+        val text = button(2).text
+        observer.notifications.clear()
+
+        submit(answers(2))
+
+        assertEquals(1, observer.notifications.size)
+        val notification = observer.notifications[0]
+        assertEquals("changed", notification.kind)
+        assertEquals(2, notification.position)
+        assertEquals(1, notification.count)
+        assertNotNull(notification.payload)
+        assertEquals(context.getColor(R.color.colorSelected), (button(2).background as ColorDrawable).color)
+        assertSame(text, button(2).text)
+    }
+
+    @Test
+    fun editedAnswer_isFullyRebound() {
+        submit(answers())
+        observer.notifications.clear()
+
+        submit(answers().mapIndexed { index, it -> if (index == 0) answer(1, 1, title = "Edited") else it })
+
+        assertEquals(listOf(Notification("changed", 1, 1)), observer.notifications)
+        assertTrue(button(1).text.startsWith("Edited"))
+    }
+
+    @Test
+    fun click_selectsAnswer() {
+        submit(answers())
+
+        button(3).performClick()
+
+        assertEquals(listOf(3L), selected.map { it.idAnswer })
+    }
+}
@@ -0,0 +1,109 @@
+package ch.heigvd.pro.b04.android.question
+
+import ch.heigvd.pro.b04.android.datamodel.Answer
+import ch.heigvd.pro.b04.android.datamodel.Poll
+import ch.heigvd.pro.b04.android.datamodel.Question
+import ch.heigvd.pro.b04.android.datamodel.answer
+import ch.heigvd.pro.b04.android.datamodel.question
+import ch.heigvd.pro.b04.android.network.NetworkError
+import ch.heigvd.pro.b04.android.network.PollSource
+import ch.heigvd.pro.b04.android.network.VoteResult
+import kotlinx.collections.immutable.persistentListOf
+import kotlinx.collections.immutable.persistentMapOf
+import kotlinx.coroutines.flow.Flow
+import kotlinx.coroutines.flow.emptyFlow
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNotSame
+import org.junit.Assert.assertSame
+import org.junit.Test
+
+private const val LARGE_POLL = 10_000
+private const val WARMUP_ROUNDS = 500
+private const val MEASURED_ROUNDS = 200
+
+/**
+ * A [PollSource] without any data, since the reducer only uses it in its effects.
+ */
+private object EmptySource : PollSource {
+    override val questions: Flow<List<Question>> = emptyFlow()
+    override val networkErrors: Flow<NetworkError> = emptyFlow()
+    override val voteResults: Flow<VoteResult> = emptyFlow()
+    override fun answers(question: Question): Flow<List<Answer>> = emptyFlow()
+    override suspend fun submit(answer: Answer) = Unit
+    override fun refresh() = Unit
+}
+
+/**
+ * Measures the merges of the reducer for a poll of [LARGE_POLL] questions, and a question of
+ * [LARGE_POLL] answers, refreshed with or without changes.
+ */
+class TransformBenchmarkTest {
+
+    private val questions = (1L..LARGE_POLL).map { question(it) }
+    private val answers = (1L..LARGE_POLL).map { FetchedAnswer(0, answer(1, it)) }
+
+    private val empty = Model(
+            Poll(1, 2),
+            questions[0],
+            "token",
+            persistentMapOf(),
+            persistentListOf(),
+            persistentMapOf(),
+            0,
+            false
+    )
+
+    private fun reduce(model: Model, event: Event): Model = transform(EmptySource, model, event).first
+
+    @Test
+    fun gotQuestions_benchmark() {
+        val loaded = reduce(empty, Event.GotQuestions(questions))
+        assertEquals(LARGE_POLL, loaded.order.size)
+
+        // The server returns new instances on each refresh.
+        val unchanged = questions.map { question(it.idQuestion) }
+        val changed = unchanged.toMutableList().apply {
+            removeAt(10)
+            set(20, question(21, title = "Edited"))
+            set(30, question(31, LARGE_POLL + 0.5))
+            add(question(LARGE_POLL + 1L, 0.5))
+        }
+        assertSame(loaded, reduce(loaded, Event.GotQuestions(unchanged)))
+        assertNotSame(loaded, reduce(loaded, Event.GotQuestions(changed)))
+
+        report("GotQuestions", "unchanged", measure { reduce(loaded, Event.GotQuestions(unchanged)) })
+        report("GotQuestions", "4 changes", measure { reduce(loaded, Event.GotQuestions(changed)) })
+    }
+
+    @Test
+    fun gotAnswers_benchmark() {
+        val question = questions[0]
+        val loaded = reduce(reduce(empty, Event.GotQuestions(questions)), Event.GotAnswers(question, answers))
+        assertEquals(LARGE_POLL, loaded.currentAnswers.size)
+
+        // Fetched after the grace period of the loaded answers.
+        val now = GRACE_DELAY_IN_MILLIS + 1
+        val unchanged = answers.map { FetchedAnswer(now, answer(1, it.answer.idAnswer)) }
+        val changed = unchanged.toMutableList().apply {
+            set(20, FetchedAnswer(now, answer(1, 21, checked = true)))
+        }
+        assertSame(loaded, reduce(loaded, Event.GotAnswers(question, unchanged)))
+        assertNotSame(loaded, reduce(loaded, Event.GotAnswers(question, changed)))
+
+        report("GotAnswers", "unchanged", measure { reduce(loaded, Event.GotAnswers(question, unchanged)) })
+        report("GotAnswers", "1 change", measure { reduce(loaded, Event.GotAnswers(question, changed)) })
+    }
+
+    private fun report(event: String, case: String, millis: Double) =
+            println("$event of $LARGE_POLL items, $case : ${"%.3f".format(millis)} ms")
+
+    /**
+     * Returns the average duration of the [block], in milliseconds.
+     */
+    private fun measure(block: () -> Any): Double {
+        repeat(WARMUP_ROUNDS) { block() }
+        val start = System.nanoTime()
+        repeat(MEASURED_ROUNDS) { block() }
+        return (System.nanoTime() - start) / 1e6 / MEASURED_ROUNDS
+    }
+}
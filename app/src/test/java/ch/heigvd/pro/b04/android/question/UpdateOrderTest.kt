@@ -0,0 +1,141 @@
+package ch.heigvd.pro.b04.android.question
+
+import ch.heigvd.pro.b04.android.datamodel.Question
+import ch.heigvd.pro.b04.android.datamodel.question
+import kotlinx.collections.immutable.PersistentList
+import kotlinx.collections.immutable.toPersistentList
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertSame
+import org.junit.Test
+import kotlin.random.Random
+
+private const val LARGE_POLL = 10_000
+private const val WARMUP_ROUNDS = 500
+private const val MEASURED_ROUNDS = 1_000
+
+class UpdateOrderTest {
+
+    private fun indexed(questions: List<Question>): Map<Long, Question> =
+            questions.associateBy { it.idQuestion }
+
+    private fun sorted(questions: Map<Long, Question>): PersistentList<Question> =
+            questions.values.sortedWith(Question.ORDER).toPersistentList()
+
+    /**
+     * Returns the changes between two sets of questions, as computed by the reducer.
+     */
+    private fun changes(old: Map<Long, Question>, new: Map<Long, Question>): Map<Long, Question?> {
+        val changes = HashMap<Long, Question?>()
+        for ((id, question) in new) {
+            val previous = old[id]
+            if (previous == null || previous != question || previous.indexInPoll != question.indexInPoll) {
+                changes[id] = question
+            }
+        }
+        for (id in old.keys - new.keys) changes[id] = null
+        return changes
+    }
+
+    /**
+     * Checks that the incremental update gives the same list as a full sort of the new questions.
+     * Equal questions may be kept as their previous instance.
+     */
+    private fun assertUpdated(old: Map<Long, Question>, new: Map<Long, Question>) {
+        val expected = sorted(new)
+        val actual = updateOrder(sorted(old), old, changes(old, new))
+        assertEquals(expected.map { it.idQuestion }, actual.map { it.idQuestion })
+        assertEquals(expected.map { it.indexInPoll }, actual.map { it.indexInPoll })
+        assertEquals(expected, actual)
+    }
+
+    @Test
+    fun unchangedQuestions_keepTheSameInstances() {
+        val old = indexed((1L..5L).map { question(it) })
+        val order = sorted(old)
+        val updated = updateOrder(order, old, changes(old, old + indexed(listOf(question(3)))))
+        assertSame(order, updated)
+    }
+
+    @Test
+    fun addedQuestions_areInserted() {
+        val old = indexed(listOf(question(1), question(3)))
+        assertUpdated(old, old + indexed(listOf(question(2), question(0), question(4))))
+    }
+
+    @Test
+    fun removedQuestions_areRemoved() {
+        val old = indexed((1L..5L).map { question(it) })
+        assertUpdated(old, old - 1 - 3 - 5)
+    }
+
+    @Test
+    fun movedQuestions_areReordered() {
+        val old = indexed((1L..5L).map { question(it) })
+        assertUpdated(old, old + indexed(listOf(question(1, 4.5), question(5, 0.5))))
+    }
+
+    @Test
+    fun editedQuestions_areReplaced() {
+        val old = indexed((1L..5L).map { question(it) })
+        assertUpdated(old, old + indexed(listOf(question(3, title = "Edited"))))
+    }
+
+    @Test
+    fun equalIndexes_areOrderedByIdentifier() {
+        val old = indexed(listOf(question(1, 1.0), question(3, 1.0)))
+        assertUpdated(old, old + indexed(listOf(question(2, 1.0))))
+    }
+
+    @Test
+    fun randomChanges_matchFullSort() {
+        val random = Random(42)
+        var current = indexed((1L..200L).map { question(it, random.nextDouble(100.0)) })
+        repeat(500) {
+            val next = current.toMutableMap()
+            repeat(random.nextInt(1, 10)) {
+                val id = random.nextLong(1, 250)
+                when (random.nextInt(3)) {
+                    0 -> next.remove(id)
+                    1 -> next[id] = question(id, random.nextDouble(100.0))
+                    else -> next[id] = question(id, next[id]?.indexInPoll ?: 0.0, "Edit $it")
+                }
+            }
+            assertUpdated(current, next)
+            current = next
+        }
+    }
+
+    /**
+     * Compares the incremental update with a full sort, for a poll of [LARGE_POLL] questions in
+     * which a few questions change between two refreshes.
+     */
+    @Test
+    fun largePoll_benchmark() {
+        val old = indexed((1L..LARGE_POLL).map { question(it) })
+        val new = old - 10L + indexed(listOf(
+                question(LARGE_POLL + 1L, 0.5),
+                question(20, title = "Edited"),
+                question(30, LARGE_POLL + 0.5)
+        ))
+        val order = sorted(old)
+        val changes = changes(old, new)
+        assertUpdated(old, new)
+
+        val incremental = measure { updateOrder(order, old, changes) }
+        val full = measure { sorted(new) }
+
+        println("Updating the order of $LARGE_POLL questions :")
+        println("  incremental : ${"%.3f".format(incremental)} ms")
+        println("  full sort   : ${"%.3f".format(full)} ms")
+    }
+
+    /**
+     * Returns the average duration of the [block], in milliseconds.
+     */
+    private fun measure(block: () -> Any): Double {
+        repeat(WARMUP_ROUNDS) { block() }
+        val start = System.nanoTime()
+        repeat(MEASURED_ROUNDS) { block() }
+        return (System.nanoTime() - start) / 1e6 / MEASURED_ROUNDS
+    }
+}
@@ -0,0 +1,86 @@
+package ch.heigvd.pro.b04.android.utils
+
+import android.content.Context
+import android.os.Looper
+import android.text.PrecomputedText
+import android.widget.TextView
+import androidx.test.core.app.ApplicationProvider
+import kotlinx.coroutines.runBlocking
+import org.junit.Assert.*
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.robolectric.RobolectricTestRunner
+import org.robolectric.Shadows.shadowOf
+import org.robolectric.annotation.Config
+
+private const val MIN_SIZE = 16
+
+/**
+ * Checks that the prefetched rows are bound with their measured text, and that the rows which
+ * miss the cache are displayed at once, then measured in the background.
+ */
+@RunWith(RobolectricTestRunner::class)
+@Config(sdk = [28])
+class RowTextCacheTest {
+
+    private val context: Context = ApplicationProvider.getApplicationContext()
+
+    private fun rows(count: Int) = List(count) { RowText(it.toLong(), "Title $it", "Details $it") }
+
+    private fun TextView.isMeasured() = text is PrecomputedText
+
+    /**
+     * Runs the main [Looper] until the [condition] holds, while the texts are measured in the
+     * background.
+     */
+    private fun await(condition: () -> Boolean) {
+        val deadline = System.currentTimeMillis() + 5_000
+        while (!condition()) {
+            assertTrue("Timed out", System.currentTimeMillis() < deadline)
+            shadowOf(Looper.getMainLooper()).idle()
+            Thread.sleep(1)
+        }
+    }
+
+    private fun cache(view: TextView) = RowTextCache(context, MIN_SIZE).apply { attach(view) }
+
+    @Test
+    fun largeList_isNotEvictedBeforeBinding() {
+        val view = TextView(context)
+        val cache = cache(view)
+        val rows = rows(MIN_SIZE * 8)
+
+        runBlocking { cache.prefetch(rows) }
+
+        for (row in rows) {
+            cache.bind(view, row)
+            assertTrue("Row ${row.id} was not prefetched", view.isMeasured())
+        }
+    }
+
+    @Test
+    fun missedRow_isDisplayedAtOnce_thenMeasured() {
+        val view = TextView(context)
+        val cache = cache(view)
+
+        cache.bind(view, RowText(1, "Title", "Details"))
+
+        assertEquals("Title\nDetails", view.text.toString())
+        assertFalse(view.isMeasured())
+        await { view.isMeasured() }
+        assertEquals("Title\nDetails", view.text.toString())
+    }
+
+    @Test
+    fun reboundView_isNotOverwrittenByAStaleText() {
+        val view = TextView(context)
+        val cache = cache(view)
+
+        cache.bind(view, RowText(1, "First", null))
+        cache.bind(view, RowText(2, "Second", null))
+        await { view.isMeasured() }
+        shadowOf(Looper.getMainLooper()).idle()
+
+        assertEquals("Second", view.text.toString())
+    }
+}